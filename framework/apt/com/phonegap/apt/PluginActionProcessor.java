@@ -0,0 +1,168 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap.apt;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates an invoker for each class with {@link com.phonegap.api.PluginAction} methods, which
+ * calls them through a switch instead of Method.invoke().
+ * <p/>
+ * The invoker of com.example.MyPlugin is com.example.MyPlugin_Actions, of a nested class
+ * Outer$Inner it is Outer_Inner_Actions. It sits in the package of the plugin, so it can only call
+ * methods that are not private; private methods and methods of private classes are left to
+ * reflection. Run with -proc:only by the -pre-compile target of build.xml, the output goes to the
+ * gen directory.
+ */
+@SupportedAnnotationTypes("com.phonegap.api.PluginAction")
+public class PluginActionProcessor extends AbstractProcessor {
+
+	static final String SUFFIX = "_Actions";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Elements elements = this.processingEnv.getElementUtils();
+		TypeElement annotation = elements.getTypeElement("com.phonegap.api.PluginAction");
+		if (annotation == null) {
+			return false;
+		}
+
+		// Methods by class, in source order
+		Map<TypeElement, List<ExecutableElement>> actions = new LinkedHashMap<TypeElement, List<ExecutableElement>>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+			if (element.getKind() != ElementKind.METHOD || !this.isCallable((ExecutableElement) element)) {
+				continue;
+			}
+			TypeElement type = (TypeElement) element.getEnclosingElement();
+			if (!this.isVisible(type)) {
+				continue;
+			}
+			List<ExecutableElement> methods = actions.get(type);
+			if (methods == null) {
+				methods = new ArrayList<ExecutableElement>();
+				actions.put(type, methods);
+			}
+			methods.add((ExecutableElement) element);
+		}
+
+		for (Map.Entry<TypeElement, List<ExecutableElement>> entry : actions.entrySet()) {
+			try {
+				this.write(entry.getKey(), entry.getValue());
+			} catch (IOException e) {
+				this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Can't write the action invoker: " + e, entry.getKey());
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check that the method is an action the invoker can call, PluginResult name(JSONArray, String).
+	 * Anything else is left to ActionTable, which reports it.
+	 */
+	private boolean isCallable(ExecutableElement method) {
+		Set<Modifier> modifiers = method.getModifiers();
+		if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+			return false;
+		}
+		List<? extends VariableElement> params = method.getParameters();
+		Types types = this.processingEnv.getTypeUtils();
+		return params.size() == 2
+				&& types.erasure(params.get(0).asType()).toString().equals("org.json.JSONArray")
+				&& types.erasure(params.get(1).asType()).toString().equals("java.lang.String");
+	}
+
+	/**
+	 * Check that the class and the classes it is nested in can be named from their package.
+	 */
+	private boolean isVisible(TypeElement type) {
+		for (Element e = type; e.getKind().isClass() || e.getKind().isInterface(); e = e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+			if (e.getEnclosingElement().getKind() != ElementKind.PACKAGE && !e.getModifiers().contains(Modifier.STATIC)) {
+				// An inner class is created by its outer instance, PluginManager never creates one
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void write(TypeElement type, List<ExecutableElement> methods) throws IOException {
+		Elements elements = this.processingEnv.getElementUtils();
+		String pkg = elements.getPackageOf(type).getQualifiedName().toString();
+		String binary = elements.getBinaryName(type).toString();
+		String name = (pkg.length() > 0 ? binary.substring(pkg.length() + 1) : binary).replace('$', '_') + SUFFIX;
+
+		StringBuilder names = new StringBuilder();
+		StringBuilder cases = new StringBuilder();
+		for (int i = 0; i < methods.size(); i++) {
+			String method = methods.get(i).getSimpleName().toString();
+			names.append(i > 0 ? ", " : "").append('"').append(method).append('"');
+			cases.append("\t\t\tcase ").append(i).append(":\n")
+					.append("\t\t\t\treturn plugin.").append(method).append("(args, callbackId);\n");
+		}
+
+		Writer out = this.processingEnv.getFiler().createSourceFile((pkg.length() > 0 ? pkg + "." : "") + name, type).openWriter();
+		try {
+			out.write("/* Generated from the @PluginAction methods of " + type.getSimpleName()
+					+ " by PluginActionProcessor. Do not edit. */\n");
+			if (pkg.length() > 0) {
+				out.write("package " + pkg + ";\n\n");
+			}
+			out.write("import com.phonegap.api.ActionInvoker;\n"
+					+ "import com.phonegap.api.Plugin;\n"
+					+ "import com.phonegap.api.PluginResult;\n"
+					+ "import org.json.JSONArray;\n\n"
+					+ "/**\n"
+					+ " * Calls the actions of " + type.getQualifiedName() + " without reflection.\n"
+					+ " */\n"
+					+ "public final class " + name + " implements ActionInvoker {\n\n"
+					+ "\t@Override\n"
+					+ "\tpublic String[] methods() {\n"
+					+ "\t\treturn new String[]{" + names + "};\n"
+					+ "\t}\n\n"
+					+ "\t@Override\n"
+					+ "\tpublic PluginResult invoke(Plugin p, int method, JSONArray args, String callbackId) throws Exception {\n"
+					+ "\t\t" + type.getQualifiedName() + " plugin = (" + type.getQualifiedName() + ") p;\n"
+					+ "\t\tswitch (method) {\n"
+					+ cases
+					+ "\t\t\tdefault:\n"
+					+ "\t\t\t\treturn null;\n"
+					+ "\t\t}\n"
+					+ "\t}\n"
+					+ "}\n");
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010-2011, IBM Corporation
+ */
+
+if (!PhoneGap.hasResource("diagnostics")) {
+PhoneGap.addResource("diagnostics");
+(function() {
+
+/**
+ * Metrics of the JavaScript to native bridge.
+ * @constructor
+ */
+var Diagnostics = function() {};
+
+/**
+ * Get the call counts and latency histograms of each plugin action and of the callback lanes.
+ * Times are in microseconds, payloads in chars. Each histogram has count, mean, p50, p90, p99,
+ * p999 and max.
+ *
+ * @param successCallback   Called with {actions, executor, cache, callbacks}
+ * @param errorCallback
+ */
+Diagnostics.prototype.getMetrics = function(successCallback, errorCallback) {
+    PhoneGap.exec(successCallback, errorCallback, "Diagnostics", "metrics", []);
+};
+
+/**
+ * Write the metrics to logcat.
+ */
+Diagnostics.prototype.logMetrics = function() {
+    PhoneGap.exec(null, null, "Diagnostics", "log", []);
+};
+
+PhoneGap.addConstructor(function() {
+    if (typeof navigator.diagnostics === "undefined") {
+        navigator.diagnostics = new Diagnostics();
+    }
+});
+}());
+}
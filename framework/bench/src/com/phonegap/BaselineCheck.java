@@ -0,0 +1,114 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares JMH results with a baseline, both in the JSON format of JMH -rf json.
+ * Exits with 1 if a benchmark has become slower than the baseline by more than the tolerance, or if
+ * the baseline has no score for a benchmark or parameter that was run, so a changed benchmark is
+ * never left unchecked. Record the baseline again with: ant baseline
+ * <p/>
+ * Usage: BaselineCheck baseline.json results.json [tolerance]
+ */
+public final class BaselineCheck {
+
+	private BaselineCheck() {
+	}
+
+	public static void main(String[] args) throws IOException, JSONException {
+		if (args.length < 2) {
+			System.err.println("Usage: BaselineCheck baseline.json results.json [tolerance]");
+			System.exit(2);
+		}
+		File baselineFile = new File(args[0]);
+		double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.25;
+		Map<String, JSONObject> results = read(new File(args[1]));
+		if (!baselineFile.isFile()) {
+			System.out.println("No baseline at " + baselineFile + ", record one with: ant baseline");
+			return;
+		}
+		Map<String, JSONObject> baseline = read(baselineFile);
+
+		int regressions = 0;
+		int missing = 0;
+		for (Map.Entry<String, JSONObject> entry : results.entrySet()) {
+			JSONObject base = baseline.get(entry.getKey());
+			if (base == null) {
+				missing++;
+				System.out.printf("  MISSING %s: not in the baseline%n", entry.getKey());
+				continue;
+			}
+			double now = score(entry.getValue());
+			double was = score(base);
+			// Lower is better for times, higher for throughput
+			double change = lowerIsBetter(entry.getValue()) ? now / was - 1 : was / now - 1;
+			boolean regressed = change > tolerance;
+			if (regressed) {
+				regressions++;
+			}
+			System.out.printf("%s %+6.1f%% %s: %.3f -> %.3f %s%n", regressed ? "  WORSE" : "  ok   ", change * 100,
+					entry.getKey(), was, now, entry.getValue().getJSONObject("primaryMetric").getString("scoreUnit"));
+		}
+		if (regressions > 0) {
+			System.out.printf("%d benchmark(s) regressed by more than %.0f%%%n", regressions, tolerance * 100);
+		}
+		if (missing > 0) {
+			System.out.printf("%d benchmark(s) missing from %s, record it again with: ant baseline%n", missing,
+					baselineFile);
+		}
+		if (regressions > 0 || missing > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Read results by benchmark and parameters, such as "com.phonegap.EncodeBenchmark.legacyEncode length=64 text=ascii".
+	 */
+	private static Map<String, JSONObject> read(File file) throws IOException, JSONException {
+		JSONArray runs = new JSONArray(new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")));
+		Map<String, JSONObject> results = new LinkedHashMap<String, JSONObject>();
+		for (int i = 0; i < runs.length(); i++) {
+			JSONObject run = runs.getJSONObject(i);
+			StringBuilder key = new StringBuilder(run.getString("benchmark"));
+			JSONObject params = run.optJSONObject("params");
+			if (params != null) {
+				Map<String, String> sorted = new TreeMap<String, String>();
+				for (Iterator<?> names = params.keys(); names.hasNext(); ) {
+					String name = (String) names.next();
+					sorted.put(name, params.getString(name));
+				}
+				for (Map.Entry<String, String> param : sorted.entrySet()) {
+					key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+				}
+			}
+			results.put(key.toString(), run);
+		}
+		return results;
+	}
+
+	private static double score(JSONObject run) throws JSONException {
+		return run.getJSONObject("primaryMetric").getDouble("score");
+	}
+
+	private static boolean lowerIsBetter(JSONObject run) throws JSONException {
+		return !"thrpt".equals(run.getString("mode"));
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * URL encoding of a callback statement into the XHR response, as the callback server does it, and
+ * as CallbackServer.encode did it before the response buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+
+	/**
+	 * Length of the message in the statement.
+	 */
+	@Param({"64", "1024", "4096", "65536", "1048576"})
+	int length;
+
+	/**
+	 * ascii: JSON text, unicode: every 4th char needs multi byte UTF-8.
+	 */
+	@Param({"ascii", "unicode"})
+	String text;
+
+	private String statement;
+	private final ResponseBuffer buffer = new ResponseBuffer(1024);
+
+	@Setup
+	public void setUp() {
+		String chars = "ascii".equals(this.text) ? "{\"name\":\"value\",\"n\":12.5}, " : "café 日本 ";
+		StringBuilder message = new StringBuilder(this.length);
+		while (message.length() < this.length) {
+			message.append(chars);
+		}
+		message.setLength(this.length);
+		this.statement = "PhoneGap.callbackSuccess('Echo12',{status:1,message:'" + message + "',keepCallback:false});";
+	}
+
+	@Benchmark
+	public int responseBuffer() {
+		this.buffer.reset();
+		this.buffer.appendEncoded(this.statement);
+		return this.buffer.length();
+	}
+
+	@Benchmark
+	public byte[] legacyEncode() throws UnsupportedEncodingException {
+		return LegacyEncoder.encode(this.statement, "UTF-8").getBytes("UTF-8");
+	}
+
+	/**
+	 * CallbackServer.encode and convert as they were before the response buffer.
+	 */
+	static final class LegacyEncoder {
+
+		/*
+		 *  Licensed to the Apache Software Foundation (ASF) under one or more
+		 *  contributor license agreements.  See the NOTICE file distributed with
+		 *  this work for additional information regarding copyright ownership.
+		 *  The ASF licenses this file to You under the Apache License, Version 2.0
+		 *  (the "License"); you may not use this file except in compliance with
+		 *  the License.  You may obtain a copy of the License at
+		 *
+		 *     http://www.apache.org/licenses/LICENSE-2.0
+		 *
+		 *  Unless required by applicable law or agreed to in writing, software
+		 *  distributed under the License is distributed on an "AS IS" BASIS,
+		 *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		 *  See the License for the specific language governing permissions and
+		 *  limitations under the License.
+		 */
+		private static final String digits = "0123456789ABCDEF";
+
+		static String encode(String s, String enc) throws UnsupportedEncodingException {
+			if (s == null || enc == null) {
+				throw new NullPointerException();
+			}
+			// check for UnsupportedEncodingException
+			"".getBytes(enc);
+
+			// Guess a bit bigger for encoded form
+			StringBuilder buf = new StringBuilder(s.length() + 16);
+			int start = -1;
+			for (int i = 0; i < s.length(); i++) {
+				char ch = s.charAt(i);
+				if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')
+						|| (ch >= '0' && ch <= '9')
+						|| " .-*_'(),<>=?@[]{}:~\"\\/;!".indexOf(ch) > -1) {
+					if (start >= 0) {
+						convert(s.substring(start, i), buf, enc);
+						start = -1;
+					}
+					buf.append(ch);
+				} else {
+					if (start < 0) {
+						start = i;
+					}
+				}
+			}
+			if (start >= 0) {
+				convert(s.substring(start, s.length()), buf, enc);
+			}
+			return buf.toString();
+		}
+
+		private static void convert(String s, StringBuilder buf, String enc) throws UnsupportedEncodingException {
+			byte[] bytes = s.getBytes(enc);
+			for (int j = 0; j < bytes.length; j++) {
+				buf.append('%');
+				buf.append(digits.charAt((bytes[j] & 0xf0) >> 4));
+				buf.append(digits.charAt(bytes[j] & 0xf));
+			}
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import android.content.Context;
+import java.io.File;
+import java.lang.reflect.Field;
+
+/**
+ * Framework objects set up on a plain JVM.
+ * <p/>
+ * A GapView is a WebView, which can't be created without a device. The fixtures allocate one
+ * without running its constructors and set the fields the bridge uses: the callback server, the
+ * plugin manager and the whitelist. The plugin manager reads res/xml/plugins.xml from the
+ * directory named by the gap.res system property, ../res by default.
+ */
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Get a context whose resources are the res directory of the framework.
+	 *
+	 * @return
+	 */
+	static Context context() {
+		return new Context(new File(System.getProperty("gap.res", "../res")));
+	}
+
+	/**
+	 * Create a GapView with a callback server, a plugin manager and an empty whitelist.
+	 *
+	 * @return
+	 */
+	static GapView gapView() {
+		GapView view = allocate(GapView.class);
+		view.callbackServer = new CallbackServer();
+		view.pluginManager = new PluginManager(context(), view, view);
+		view.whiteList = new WhiteList();
+		return view;
+	}
+
+	/**
+	 * Let the threads of the plugin manager go.
+	 *
+	 * @param view
+	 */
+	static void destroy(GapView view) {
+		view.pluginManager.onDestroy();
+		view.callbackServer.destroy();
+	}
+
+	/**
+	 * Allocate an object without running its constructors, with sun.misc.Unsafe.
+	 */
+	private static <T> T allocate(Class<T> type) {
+		try {
+			Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+			Field field = unsafe.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			return type.cast(unsafe.getMethod("allocateInstance", Class.class).invoke(field.get(null), type));
+		} catch (Exception e) {
+			throw new IllegalStateException("Can't allocate " + type, e);
+		}
+	}
+
+}
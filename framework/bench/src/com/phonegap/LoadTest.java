@@ -0,0 +1,399 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the callback server on a plain JVM. Producer threads add statements with
+ * sendJavascript() at a set rate, while one client reads them from the XHR server as phonegap.js
+ * does. Reports the time from adding a statement to the client decoding it, and the statements
+ * delivered per second.
+ * <p/>
+ * Usage: LoadTest [options]
+ * <pre>
+ * -client poll|batch|stream  How the client reads: one statement per request, ?batch or ?stream (batch)
+ * -nio                       Use the non-blocking server with persistent connections
+ * -producers N               Number of producer threads (4)
+ * -rate N                    Statements per second of each producer, 0 = as fast as possible (1000)
+ * -size N                    Chars of each statement (64)
+ * -warmup N                  Seconds before measuring (2)
+ * -seconds N                 Seconds measured (10)
+ * -policy NAME               Overflow policy of the server, see CallbackServer.Overflow
+ * </pre>
+ * Each statement carries the System.nanoTime() it was added at. Only statements added while
+ * measuring are counted, those still queued when the producers stop are drained first.
+ * Exits with 1 if a producer thread fails.
+ */
+public final class LoadTest {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final String PREFIX = "LoadTest.received(";
+
+	private String client = "batch";
+	private boolean nio;
+	private int producers = 4;
+	private int rate = 1000;
+	private int size = 64;
+	private int warmup = 2;
+	private int seconds = 10;
+	private String policy;
+
+	private CallbackServer server;
+	private String padding;
+	private volatile boolean running = true;
+	private volatile boolean polling = true;
+	private volatile long measureFrom = Long.MAX_VALUE;
+	private volatile long measureTo = Long.MAX_VALUE;
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong delivered = new AtomicLong();
+	/**
+	 * Time from adding a statement to the client decoding it, in microseconds.
+	 */
+	private final Histogram latency = new Histogram();
+	private volatile Throwable producerFailure;
+	private long errors;
+	private IOException lastError;
+
+	private volatile Socket socket;
+	private InputStream in;
+	private OutputStream out;
+
+	private LoadTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTest test = new LoadTest();
+		try {
+			test.parse(args);
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: LoadTest [-client poll|batch|stream] [-nio] [-producers N] [-rate N] [-size N]"
+					+ " [-warmup N] [-seconds N] [-policy NAME]");
+			System.exit(2);
+		}
+		int status = test.run();
+		// The blocking server thread stays in accept() until the next connection
+		System.exit(status);
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-nio")) {
+				this.nio = true;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + arg);
+			}
+			String value = args[++i];
+			if (arg.equals("-client")) {
+				if (!value.equals("poll") && !value.equals("batch") && !value.equals("stream")) {
+					throw new IllegalArgumentException("Unknown client: " + value);
+				}
+				this.client = value;
+			} else if (arg.equals("-producers")) {
+				this.producers = Math.max(1, Integer.parseInt(value));
+			} else if (arg.equals("-rate")) {
+				this.rate = Math.max(0, Integer.parseInt(value));
+			} else if (arg.equals("-size")) {
+				this.size = Integer.parseInt(value);
+			} else if (arg.equals("-warmup")) {
+				this.warmup = Math.max(0, Integer.parseInt(value));
+			} else if (arg.equals("-seconds")) {
+				this.seconds = Math.max(1, Integer.parseInt(value));
+			} else if (arg.equals("-policy")) {
+				this.policy = value;
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+	}
+
+	private int run() throws InterruptedException {
+		StringBuilder pad = new StringBuilder();
+		while (PREFIX.length() + 19 + pad.length() + 4 < this.size) {
+			pad.append('x');
+		}
+		this.padding = pad.toString();
+
+		this.server = new CallbackServer();
+		this.server.setUseNio(this.nio);
+		this.server.setOverflowPolicy(this.policy, 0);
+		this.server.init("file:///android_asset/www/index.html");
+		for (int i = 0; i < 500 && !this.server.isActive(); i++) {
+			Thread.sleep(10);
+		}
+		if (!this.server.isActive()) {
+			System.err.println("Callback server did not start");
+			return 1;
+		}
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				LoadTest.this.read();
+			}
+		}, "client");
+		reader.start();
+		Thread[] threads = new Thread[this.producers];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						LoadTest.this.produce();
+					} catch (Throwable e) {
+						LoadTest.this.producerFailure = e;
+						e.printStackTrace();
+					}
+				}
+			}, "producer-" + i);
+			threads[i].start();
+		}
+
+		Thread.sleep(this.warmup * 1000L);
+		long sentFrom = this.sent.get();
+		long deliveredFrom = this.delivered.get();
+		this.measureFrom = System.nanoTime();
+		Thread.sleep(this.seconds * 1000L);
+		this.measureTo = System.nanoTime();
+		long sentTo = this.sent.get();
+		long deliveredTo = this.delivered.get();
+		this.running = false;
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		// Let the client take what is still queued
+		for (int i = 0; i < 500 && this.server.hasJavascript(); i++) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		this.polling = false;
+		this.close();
+		reader.join(1000);
+		this.server.destroy();
+
+		double window = (this.measureTo - this.measureFrom) / 1e9;
+		System.out.printf("client=%s server=%s producers=%d rate=%s size=%d seconds=%d%n", this.client,
+				this.nio ? "nio" : "blocking", this.producers, this.rate > 0 ? this.rate + "/s" : "max", this.size,
+				this.seconds);
+		System.out.printf("sent      %10d %12.0f/s%n", sentTo - sentFrom, (sentTo - sentFrom) / window);
+		System.out.printf("delivered %10d %12.0f/s%n", deliveredTo - deliveredFrom, (deliveredTo - deliveredFrom) / window);
+		System.out.printf("overflow  %10d  client errors %d%s%n", this.server.getOverflowCount(), this.errors,
+				this.lastError != null ? ", last: " + this.lastError : "");
+		JSONObject latency = this.latency.toJSON();
+		System.out.printf("latency us (%d): p50=%d p99=%d p999=%d mean=%d max=%d%n", latency.optLong("count"),
+				latency.optLong("p50"), latency.optLong("p99"), latency.optLong("p999"), latency.optLong("mean"),
+				latency.optLong("max"));
+		if (this.producerFailure != null) {
+			System.out.println("FAILED: a producer threw " + this.producerFailure);
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Add statements at the rate, catching up after falling behind.
+	 */
+	private void produce() {
+		long interval = this.rate > 0 ? 1000000000L / this.rate : 0;
+		long next = System.nanoTime();
+		StringBuilder statement = new StringBuilder(this.size);
+		while (this.running) {
+			if (interval > 0) {
+				long wait = next - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+					continue;
+				}
+				next += interval;
+			}
+			statement.setLength(0);
+			statement.append(PREFIX).append(System.nanoTime()).append(",'").append(this.padding).append("');");
+			this.server.sendJavascript(statement.toString());
+			this.sent.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Client loop, reconnects whenever the server closes the connection.
+	 */
+	private void read() {
+		String query = this.client.equals("poll") ? "" : "?" + this.client;
+		while (this.polling) {
+			try {
+				if (this.socket == null) {
+					this.socket = new Socket(InetAddress.getByName("127.0.0.1"), this.server.getPort());
+					this.socket.setTcpNoDelay(true);
+					this.in = new BufferedInputStream(this.socket.getInputStream(), 64 * 1024);
+					this.out = this.socket.getOutputStream();
+				}
+				this.out.write(("GET /" + this.server.getToken() + query + " HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n")
+						.getBytes(ASCII));
+				this.out.flush();
+				if (this.client.equals("stream")) {
+					this.stream();
+				} else {
+					this.poll();
+				}
+			} catch (IOException e) {
+				if (this.polling) {
+					this.errors++;
+					this.lastError = e;
+				}
+				this.close();
+			}
+		}
+	}
+
+	/**
+	 * Read a response as the XHR of phonegap.js, by Content-Length on a persistent connection,
+	 * otherwise up to the end of the connection.
+	 */
+	private void poll() throws IOException {
+		String status = this.readLine();
+		if (status == null) {
+			// Persistent connection closed by the server
+			this.close();
+			return;
+		}
+		int length = -1;
+		boolean close = false;
+		for (String line = this.readLine(); line != null && line.length() > 0; line = this.readLine()) {
+			line = line.toLowerCase();
+			if (line.startsWith("content-length:")) {
+				length = Integer.parseInt(line.substring(15).trim());
+			} else if (line.equals("connection: close")) {
+				close = true;
+			}
+		}
+		byte[] body = length >= 0 ? this.readFully(length) : this.readToEnd();
+		if (length < 0 || close) {
+			this.close();
+		}
+		if (status.contains(" 200 ")) {
+			int start = 0;
+			for (int i = 0; i <= body.length; i++) {
+				if (i == body.length || body[i] == '\n') {
+					this.deliver(body, start, i - start);
+					start = i + 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read chunked frames until the server ends the stream.
+	 */
+	private void stream() throws IOException {
+		String status = this.readLine();
+		if (status == null || !status.contains(" 200 ")) {
+			throw new IOException("Stream refused: " + status);
+		}
+		for (String line = this.readLine(); line != null && line.length() > 0; line = this.readLine()) {
+			// skip the headers
+		}
+		while (this.polling) {
+			String line = this.readLine();
+			if (line == null) {
+				throw new EOFException();
+			}
+			int length = Integer.parseInt(line.trim(), 16);
+			if (length == 0) {
+				this.readLine();
+				this.close();
+				return;
+			}
+			byte[] frame = this.readFully(length);
+			this.readLine();
+			// A ping is a lone '\n'
+			if (length > 1) {
+				this.deliver(frame, 0, length - 1);
+			}
+		}
+	}
+
+	/**
+	 * Decode a statement as phonegap.js does and record its latency.
+	 */
+	private void deliver(byte[] data, int start, int length) throws IOException {
+		if (length == 0) {
+			return;
+		}
+		String statement = URLDecoder.decode(new String(data, start, length, ASCII), "UTF-8");
+		long now = System.nanoTime();
+		int from = statement.indexOf(PREFIX) + PREFIX.length();
+		long added = Long.parseLong(statement.substring(from, statement.indexOf(',', from)));
+		this.delivered.incrementAndGet();
+		if (added >= this.measureFrom && added < this.measureTo) {
+			this.latency.record((now - added) / 1000);
+		}
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = this.in.read()) >= 0) {
+			if (c == '\n') {
+				int n = line.length();
+				return (n > 0 && line.charAt(n - 1) == '\r') ? line.substring(0, n - 1) : line.toString();
+			}
+			line.append((char) c);
+		}
+		return line.length() > 0 ? line.toString() : null;
+	}
+
+	private byte[] readFully(int length) throws IOException {
+		byte[] data = new byte[length];
+		for (int n = 0; n < length; ) {
+			int read = this.in.read(data, n, length - n);
+			if (read < 0) {
+				throw new EOFException();
+			}
+			n += read;
+		}
+		return data;
+	}
+
+	private byte[] readToEnd() throws IOException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		for (int read; (read = this.in.read(buf)) >= 0; ) {
+			data.write(buf, 0, read);
+		}
+		return data.toByteArray();
+	}
+
+	private void close() {
+		Socket s = this.socket;
+		this.socket = null;
+		if (s != null) {
+			try {
+				s.close();
+			} catch (IOException e) {
+				// already closed
+			}
+		}
+	}
+}
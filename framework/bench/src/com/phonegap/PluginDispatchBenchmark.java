@@ -0,0 +1,128 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import com.phonegap.api.Plugin;
+import com.phonegap.api.PluginAction;
+import com.phonegap.api.PluginResult;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PluginManager.exec of a plugin that echoes its first argument: a sync call, a sync call answered
+ * from the result cache, and an async call from dispatch until its callback is in the queue.
+ * The same sync call to a {@link PluginAction} method, through its generated invoker and, for a
+ * private method, through reflection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginDispatchBenchmark {
+
+	/**
+	 * Echoes its first argument. echoAsync runs on the pool, cached is cached for a minute.
+	 */
+	public static class EchoPlugin extends Plugin {
+
+		@Override
+		public PluginResult execute(String action, JSONArray args, String callbackId) {
+			return new PluginResult(PluginResult.Status.OK, args.optString(0));
+		}
+
+		@Override
+		public boolean isSynch(String action) {
+			return !"echoAsync".equals(action);
+		}
+
+		@Override
+		public long getCacheTtl(String action) {
+			return "cached".equals(action) ? 60000 : 0;
+		}
+	}
+
+	/**
+	 * Echoes its first argument from {@link PluginAction} methods.
+	 */
+	public static class ActionPlugin extends Plugin {
+
+		@PluginAction(sync = true)
+		PluginResult echo(JSONArray args, String callbackId) {
+			return new PluginResult(PluginResult.Status.OK, args.optString(0));
+		}
+
+		@PluginAction(sync = true)
+		private PluginResult echoPrivate(JSONArray args, String callbackId) {
+			return new PluginResult(PluginResult.Status.OK, args.optString(0));
+		}
+	}
+
+	private static final String ARGS = "[\"hello\",42,{\"options\":true}]";
+
+	private GapView view;
+	private PluginManager pluginManager;
+	private int callbackId;
+
+	@Setup
+	public void setUp() {
+		this.view = Fixtures.gapView();
+		this.pluginManager = this.view.pluginManager;
+		this.pluginManager.addService("Echo", EchoPlugin.class.getName());
+		this.pluginManager.addService("Action", ActionPlugin.class.getName());
+	}
+
+	@TearDown
+	public void tearDown() {
+		Fixtures.destroy(this.view);
+	}
+
+	@Benchmark
+	public String execSync() {
+		return this.pluginManager.exec("Echo", "echo", "Echo" + (this.callbackId++), ARGS, true);
+	}
+
+	@Benchmark
+	public String execCached() {
+		return this.pluginManager.exec("Echo", "cached", "Echo" + (this.callbackId++), ARGS, true);
+	}
+
+	@Benchmark
+	public String execAction() {
+		return this.pluginManager.exec("Action", "echo", "Action" + (this.callbackId++), ARGS, true);
+	}
+
+	@Benchmark
+	public String execActionReflective() {
+		return this.pluginManager.exec("Action", "echoPrivate", "Action" + (this.callbackId++), ARGS, true);
+	}
+
+	@Benchmark
+	public String execAsync() {
+		this.pluginManager.exec("Echo", "echoAsync", "Echo" + (this.callbackId++), ARGS, true);
+		CallbackServer server = this.view.callbackServer;
+		String statement;
+		while ((statement = server.getJavascript()) == null) {
+			Thread.yield();
+		}
+		return statement;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import com.phonegap.api.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of plugin results: the callback statement and the record written into the
+ * response, against building the JSON text first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginResultBenchmark {
+
+	/**
+	 * Number of rows of 5 columns in the message, 1 is about the size of device info.
+	 */
+	@Param({"1", "200"})
+	int rows;
+
+	private JSONArray message;
+	private PluginResult result;
+	private final ResponseBuffer buffer = new ResponseBuffer(1024);
+
+	@Setup
+	public void setUp() throws JSONException {
+		this.message = new JSONArray();
+		for (int i = 0; i < this.rows; i++) {
+			JSONObject row = new JSONObject();
+			row.put("id", Integer.toString(i));
+			row.put("name", "Row " + i);
+			row.put("path", "/sdcard/DCIM/Camera/IMG_" + i + ".jpg");
+			row.put("modified", "2011-08-01 12:00:" + (i % 60));
+			row.put("note", "Quote \" and slash / and\nnewline");
+			this.message.put(row);
+		}
+		this.result = new PluginResult(PluginResult.Status.OK, this.message);
+	}
+
+	/**
+	 * The message serialized to a String first, as before statements.
+	 */
+	@Benchmark
+	public int jsonString() {
+		this.buffer.reset();
+		String json = this.message.toString();
+		this.buffer.appendEncoded("PhoneGap.callbackSuccess('Echo12',{status:1,message:" + json + ",keepCallback:false});");
+		return this.buffer.length();
+	}
+
+	@Benchmark
+	public int successCallback() {
+		this.buffer.reset();
+		this.buffer.appendEncoded(this.result.toSuccessCallback("Echo12"));
+		return this.buffer.length();
+	}
+
+	@Benchmark
+	public int record() {
+		this.buffer.reset();
+		this.buffer.appendEncoded(this.result.toRecord("Echo12"));
+		return this.buffer.length();
+	}
+
+	/**
+	 * The sync return value of an action.
+	 */
+	@Benchmark
+	public String jsonResult() {
+		return this.result.getJSONString();
+	}
+}
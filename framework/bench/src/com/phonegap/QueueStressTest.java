@@ -0,0 +1,185 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Stress test of {@link CallbackQueue} on a plain JVM. Producer threads add numbered statements as
+ * fast as they can while one consumer peeks and polls them, and checks that every statement is
+ * taken exactly once and in the order its producer added it. Statements of different producers
+ * may interleave in any order.
+ * <p/>
+ * Usage: QueueStressTest [options]
+ * <pre>
+ * -producers N  Number of producer threads (8)
+ * -count N      Statements added by each producer per round (250000)
+ * -rounds N     Rounds, each on a new queue (5)
+ * </pre>
+ * Exits with 1 at the first statement that is lost, repeated or out of order.
+ */
+public final class QueueStressTest {
+
+	private int producers = 8;
+	private int count = 250000;
+	private int rounds = 5;
+
+	private QueueStressTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		QueueStressTest test = new QueueStressTest();
+		try {
+			test.parse(args);
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: QueueStressTest [-producers N] [-count N] [-rounds N]");
+			System.exit(2);
+		}
+		System.exit(test.run());
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + arg);
+			}
+			int value = Integer.parseInt(args[++i]);
+			if (arg.equals("-producers")) {
+				this.producers = Math.max(1, value);
+			} else if (arg.equals("-count")) {
+				this.count = Math.max(1, value);
+			} else if (arg.equals("-rounds")) {
+				this.rounds = Math.max(1, value);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+	}
+
+	private int run() throws InterruptedException {
+		System.out.println(String.format("producers=%d count=%d rounds=%d", this.producers, this.count, this.rounds));
+		for (int round = 1; round <= this.rounds; round++) {
+			long start = System.nanoTime();
+			String error = this.round();
+			long ms = (System.nanoTime() - start) / 1000000;
+			if (error != null) {
+				System.out.println(String.format("round %d FAILED: %s", round, error));
+				return 1;
+			}
+			long total = (long) this.producers * this.count;
+			System.out.println(String.format("round %d  %d statements in %d ms  %d/s", round, total, ms,
+					ms > 0 ? total * 1000 / ms : total));
+		}
+		return 0;
+	}
+
+	/**
+	 * Run one round on a new queue.
+	 *
+	 * @return Null if every statement was taken once and in order, else what went wrong
+	 */
+	private String round() throws InterruptedException {
+		final CallbackQueue queue = new CallbackQueue();
+		final CountDownLatch go = new CountDownLatch(1);
+		Thread[] threads = new Thread[this.producers];
+		for (int p = 0; p < this.producers; p++) {
+			final int producer = p;
+			threads[p] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						go.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int seq = 0; seq < QueueStressTest.this.count; seq++) {
+						queue.offer(new Numbered(producer, seq));
+					}
+				}
+			}, "producer-" + p);
+			threads[p].start();
+		}
+		go.countDown();
+
+		// Next number expected from each producer
+		int[] expected = new int[this.producers];
+		long remaining = (long) this.producers * this.count;
+		String error = null;
+		while (remaining > 0 && error == null) {
+			CharSequence peeked = queue.peek();
+			if (peeked == null) {
+				if (!this.anyAlive(threads) && queue.isEmpty()) {
+					error = remaining + " statements lost";
+				}
+				continue;
+			}
+			CharSequence taken = queue.poll();
+			if (taken != peeked) {
+				error = "peek() returned " + peeked + " but poll() " + taken;
+				break;
+			}
+			Numbered n = (Numbered) taken;
+			if (n.seq != expected[n.producer]) {
+				error = "producer " + n.producer + " expected " + expected[n.producer] + " got " + n.seq;
+			}
+			expected[n.producer]++;
+			remaining--;
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (error == null && (queue.poll() != null || queue.size() != 0)) {
+			error = "statements left over, size=" + queue.size();
+		}
+		return error;
+	}
+
+	private boolean anyAlive(Thread[] threads) {
+		for (Thread thread : threads) {
+			if (thread.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Statement that carries its producer and number, without building a String for each.
+	 */
+	private static final class Numbered implements CharSequence {
+		final int producer;
+		final int seq;
+
+		Numbered(int producer, int seq) {
+			this.producer = producer;
+			this.seq = seq;
+		}
+
+		@Override
+		public int length() {
+			return 1;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return ' ';
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return this.toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return this.producer + ":" + this.seq;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import com.phonegap.api.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An accelerometer sample sent as a reused primitive result, against a JSONObject per sample as
+ * AccelListenerPlugin built it before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorResultBenchmark {
+
+	private final ResponseBuffer buffer = new ResponseBuffer(1024);
+	private final PluginResult sample = new PluginResult(PluginResult.Status.OK,
+			new String[]{"x", "y", "z", "timestamp"}, new double[4]);
+	private float x = 0.12f;
+
+	@Benchmark
+	public int jsonObject() throws JSONException {
+		this.buffer.reset();
+		JSONObject r = new JSONObject();
+		// Android's JSONObject has no put(String, float), the plugin's floats were put as doubles
+		r.put("x", (double) this.x);
+		r.put("y", (double) this.x);
+		r.put("z", (double) this.x);
+		r.put("timestamp", 1300000000000L);
+		this.buffer.appendEncoded(new PluginResult(PluginResult.Status.OK, r).toSuccessCallback("Accel3"));
+		return this.buffer.length();
+	}
+
+	@Benchmark
+	public int primitive() {
+		this.buffer.reset();
+		this.sample.setDoubles(this.x, this.x, this.x, 1300000000000L);
+		this.buffer.appendEncoded(this.sample.toSuccessCallback("Accel3"));
+		return this.buffer.length();
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+import com.phonegap.plugins.StoragePlugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StoragePlugin.processResults over a cursor of rows of 5 text columns, with the response the
+ * callback server builds from the statement it sends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+	@Param({"10", "1000"})
+	int rows;
+
+	private GapView view;
+	private StoragePlugin plugin;
+	private Method processResults;
+	private SyntheticCursor cursor;
+	private final ResponseBuffer buffer = new ResponseBuffer(1024);
+
+	@Setup
+	public void setUp() throws Exception {
+		this.view = Fixtures.gapView();
+		this.plugin = new StoragePlugin();
+		this.plugin.setContext(Fixtures.context());
+		this.plugin.setController(this.view);
+		this.processResults = StoragePlugin.class.getDeclaredMethod("processResults", Cursor.class, String.class);
+		this.processResults.setAccessible(true);
+		this.cursor = new SyntheticCursor(this.rows, new String[]{"id", "name", "email", "phone", "note"});
+	}
+
+	@TearDown
+	public void tearDown() {
+		Fixtures.destroy(this.view);
+	}
+
+	@Benchmark
+	public int processResults() throws Exception {
+		this.processResults.invoke(this.plugin, this.cursor, "tx7");
+		this.buffer.reset();
+		this.view.callbackServer.drainJavascript(this.buffer, true);
+		return this.buffer.length();
+	}
+
+	/**
+	 * Read only cursor over generated rows, the value of a cell is made of its row and column.
+	 */
+	static final class SyntheticCursor implements Cursor {
+		private final int count;
+		private final String[] columns;
+		private final String[][] values;
+		private int position = -1;
+
+		SyntheticCursor(int count, String[] columns) {
+			this.count = count;
+			this.columns = columns;
+			this.values = new String[count][columns.length];
+			for (int row = 0; row < count; row++) {
+				for (int column = 0; column < columns.length; column++) {
+					this.values[row][column] = columns[column] + " of row " + row;
+				}
+			}
+		}
+
+		public int getCount() {
+			return this.count;
+		}
+
+		public int getPosition() {
+			return this.position;
+		}
+
+		public boolean move(int offset) {
+			return this.moveToPosition(this.position + offset);
+		}
+
+		public boolean moveToPosition(int position) {
+			this.position = Math.max(-1, Math.min(this.count, position));
+			return this.position >= 0 && this.position < this.count;
+		}
+
+		public boolean moveToFirst() {
+			return this.moveToPosition(0);
+		}
+
+		public boolean moveToLast() {
+			return this.moveToPosition(this.count - 1);
+		}
+
+		public boolean moveToNext() {
+			return this.moveToPosition(this.position + 1);
+		}
+
+		public boolean moveToPrevious() {
+			return this.moveToPosition(this.position - 1);
+		}
+
+		public boolean isFirst() {
+			return this.count > 0 && this.position == 0;
+		}
+
+		public boolean isLast() {
+			return this.count > 0 && this.position == this.count - 1;
+		}
+
+		public boolean isBeforeFirst() {
+			return this.count == 0 || this.position == -1;
+		}
+
+		public boolean isAfterLast() {
+			return this.count == 0 || this.position == this.count;
+		}
+
+		public int getColumnIndex(String columnName) {
+			for (int i = 0; i < this.columns.length; i++) {
+				if (this.columns[i].equals(columnName)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		public int getColumnIndexOrThrow(String columnName) {
+			int index = this.getColumnIndex(columnName);
+			if (index < 0) {
+				throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+			}
+			return index;
+		}
+
+		public String getColumnName(int columnIndex) {
+			return this.columns[columnIndex];
+		}
+
+		public String[] getColumnNames() {
+			return this.columns.clone();
+		}
+
+		public int getColumnCount() {
+			return this.columns.length;
+		}
+
+		public byte[] getBlob(int columnIndex) {
+			return this.getString(columnIndex).getBytes();
+		}
+
+		public String getString(int columnIndex) {
+			return this.values[this.position][columnIndex];
+		}
+
+		public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+			throw new UnsupportedOperationException();
+		}
+
+		public short getShort(int columnIndex) {
+			return 0;
+		}
+
+		public int getInt(int columnIndex) {
+			return 0;
+		}
+
+		public long getLong(int columnIndex) {
+			return 0;
+		}
+
+		public float getFloat(int columnIndex) {
+			return 0;
+		}
+
+		public double getDouble(int columnIndex) {
+			return 0;
+		}
+
+		public int getType(int columnIndex) {
+			return 3; // FIELD_TYPE_STRING
+		}
+
+		public boolean isNull(int columnIndex) {
+			return false;
+		}
+
+		@Deprecated
+		public void deactivate() {
+		}
+
+		@Deprecated
+		public boolean requery() {
+			return true;
+		}
+
+		public void close() {
+		}
+
+		public boolean isClosed() {
+			return false;
+		}
+
+		public void registerContentObserver(ContentObserver observer) {
+		}
+
+		public void unregisterContentObserver(ContentObserver observer) {
+		}
+
+		public void registerDataSetObserver(DataSetObserver observer) {
+		}
+
+		public void unregisterDataSetObserver(DataSetObserver observer) {
+		}
+
+		public void setNotificationUri(ContentResolver cr, Uri uri) {
+		}
+
+		public Uri getNotificationUri() {
+			return null;
+		}
+
+		public boolean getWantsAllOnMoveCalls() {
+			return false;
+		}
+
+		public void setExtras(Bundle extras) {
+		}
+
+		public Bundle getExtras() {
+			return null;
+		}
+
+		public Bundle respond(Bundle extras) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whitelist checks of GapView.isUrlWhiteListed with a number of access origins, half of them
+ * with subdomains, and the cost of adding an origin with GapConfig.addWhiteListEntry. Checks of
+ * URLs seen before are answered by the cache, unseen ones by the host trie.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WhiteListBenchmark {
+
+	/**
+	 * GapView whose whitelist allows a number of origins.
+	 */
+	@State(Scope.Thread)
+	public static class Origins {
+
+		@Param({"1", "10", "100"})
+		int origins;
+
+		GapView view;
+		String allowed;
+		String denied;
+		String[] unseen;
+		int next;
+
+		@Setup
+		public void setUp() {
+			this.view = Fixtures.gapView();
+			for (int i = 0; i < this.origins; i++) {
+				GapConfig.addWhiteListEntry(this.view.whiteList, origin(i), i % 2 == 0);
+			}
+			this.allowed = "http://" + origin(this.origins - 1) + "/api/items?page=2";
+			this.denied = "http://ads.tracker.example.net/pixel.gif?id=" + this.origins;
+			this.unseen = new String[WhiteList.CACHE_SIZE * 4];
+			for (int i = 0; i < this.unseen.length; i++) {
+				this.unseen[i] = "http://" + (i % 2 == 0 ? "cdn" + i + "." + origin(0) : "ads" + i + ".tracker.example.net")
+						+ "/pixel.gif?id=" + i;
+			}
+		}
+
+		@TearDown
+		public void tearDown() {
+			Fixtures.destroy(this.view);
+		}
+
+		private static String origin(int i) {
+			return "host" + i + ".example.com";
+		}
+	}
+
+	/**
+	 * A URL that was allowed before.
+	 */
+	@Benchmark
+	public boolean allowed(Origins state) {
+		return state.view.isUrlWhiteListed(state.allowed);
+	}
+
+	/**
+	 * A URL no origin allows, checked before.
+	 */
+	@Benchmark
+	public boolean denied(Origins state) {
+		return state.view.isUrlWhiteListed(state.denied);
+	}
+
+	/**
+	 * URLs of more hosts than the cache holds, half of them subdomains of an allowed origin.
+	 */
+	@Benchmark
+	public boolean unseen(Origins state) {
+		String url = state.unseen[state.next];
+		state.next = (state.next + 1) % state.unseen.length;
+		return state.view.isUrlWhiteListed(url);
+	}
+
+	@Benchmark
+	public WhiteList addWhiteListEntry() {
+		WhiteList whiteList = new WhiteList();
+		GapConfig.addWhiteListEntry(whiteList, "http://api.example.com", false);
+		GapConfig.addWhiteListEntry(whiteList, "cdn.example.com", true);
+		return whiteList;
+	}
+}
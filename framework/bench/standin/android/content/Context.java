@@ -0,0 +1,40 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package android.content;
+
+import android.content.res.Resources;
+
+import java.io.File;
+
+/**
+ * Stand-in for running the framework on a plain JVM. Only the resources are there, read from a
+ * directory laid out like res/ of the project.
+ */
+public class Context {
+
+	private final Resources resources;
+
+	/**
+	 * @param res The res directory, such as framework/res
+	 */
+	public Context(File res) {
+		this.resources = new Resources(res);
+	}
+
+	public Resources getResources() {
+		return this.resources;
+	}
+
+	public String getPackageName() {
+		return "com.phonegap";
+	}
+
+	public Object getSystemService(String name) {
+		return null;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package android.content.res;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Stand-in for running the framework on a plain JVM: XML resources are read from the files of a
+ * res directory, res/xml/plugins.xml has an identifier once it has been looked up.
+ */
+public class Resources {
+
+	private final File dir;
+	private final ArrayList<File> files = new ArrayList<File>();
+
+	public Resources(File dir) {
+		this.dir = dir;
+	}
+
+	public synchronized int getIdentifier(String name, String defType, String defPackage) {
+		File file = new File(new File(this.dir, defType), name + ".xml");
+		if (!file.isFile()) {
+			return 0;
+		}
+		int index = this.files.indexOf(file);
+		if (index < 0) {
+			index = this.files.size();
+			this.files.add(file);
+		}
+		return index + 1;
+	}
+
+	public synchronized XmlResourceParser getXml(int id) {
+		if (id < 1 || id > this.files.size()) {
+			throw new RuntimeException("Resource ID #0x" + Integer.toHexString(id));
+		}
+		return new XmlFileParser(this.files.get(id - 1));
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package android.content.res;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link XmlResourceParser} of an XML file, on top of the StAX parser of the JDK.
+ */
+final class XmlFileParser implements XmlResourceParser {
+
+	private final InputStream in;
+	private final XMLStreamReader reader;
+
+	XmlFileParser(File file) {
+		try {
+			this.in = new FileInputStream(file);
+			this.reader = XMLInputFactory.newInstance().createXMLStreamReader(this.in);
+		} catch (IOException e) {
+			throw new RuntimeException("Can't read " + file, e);
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Can't parse " + file, e);
+		}
+	}
+
+	@Override
+	public int next() {
+		try {
+			while (this.reader.hasNext()) {
+				switch (this.reader.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						return START_TAG;
+					case XMLStreamConstants.END_ELEMENT:
+						return END_TAG;
+					default:
+						break;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+		this.close();
+		return END_DOCUMENT;
+	}
+
+	@Override
+	public String getName() {
+		return this.reader.getLocalName();
+	}
+
+	@Override
+	public String getAttributeValue(String namespace, String name) {
+		return this.reader.getAttributeValue(namespace, name);
+	}
+
+	@Override
+	public boolean getAttributeBooleanValue(String namespace, String attribute, boolean defaultValue) {
+		String value = this.getAttributeValue(namespace, attribute);
+		return value != null ? Boolean.parseBoolean(value) : defaultValue;
+	}
+
+	@Override
+	public int getAttributeIntValue(String namespace, String attribute, int defaultValue) {
+		String value = this.getAttributeValue(namespace, attribute);
+		return value != null ? Integer.decode(value) : defaultValue;
+	}
+
+	@Override
+	public void close() {
+		try {
+			this.reader.close();
+			this.in.close();
+		} catch (XMLStreamException e) {
+			// Nothing left to read
+		} catch (IOException e) {
+			// Nothing left to read
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package android.content.res;
+
+/**
+ * Stand-in for running the framework on a plain JVM, with the part of XmlPullParser and
+ * AttributeSet the framework uses to read its configuration.
+ */
+public interface XmlResourceParser {
+
+	int START_DOCUMENT = 0;
+	int END_DOCUMENT = 1;
+	int START_TAG = 2;
+	int END_TAG = 3;
+
+	/**
+	 * Move to the next start tag, end tag or the end of the document. Text is skipped.
+	 *
+	 * @return The event
+	 */
+	int next();
+
+	String getName();
+
+	String getAttributeValue(String namespace, String name);
+
+	boolean getAttributeBooleanValue(String namespace, String attribute, boolean defaultValue);
+
+	int getAttributeIntValue(String namespace, String attribute, int defaultValue);
+
+	void close();
+}
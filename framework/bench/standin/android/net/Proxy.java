@@ -0,0 +1,26 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package android.net;
+
+/**
+ * Stand-in for running the framework on a plain JVM: there is never a proxy, so
+ * {@link com.phonegap.CallbackServer#init(String)} starts the XHR server.
+ */
+public final class Proxy {
+
+	private Proxy() {
+	}
+
+	public static String getDefaultHost() {
+		return null;
+	}
+
+	public static int getDefaultPort() {
+		return -1;
+	}
+}
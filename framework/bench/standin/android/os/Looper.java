@@ -0,0 +1,28 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package android.os;
+
+/**
+ * Stand-in for running the framework on a plain JVM: no thread runs a message loop, so none is
+ * the UI thread and producers wait for room with the BLOCK overflow policy.
+ */
+public final class Looper {
+
+	private static final Looper MAIN = new Looper();
+
+	private Looper() {
+	}
+
+	public static Looper myLooper() {
+		return null;
+	}
+
+	public static Looper getMainLooper() {
+		return MAIN;
+	}
+}
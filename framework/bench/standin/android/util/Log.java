@@ -0,0 +1,108 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package android.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Stand-in for running the framework on a plain JVM: messages at or above the level named by the
+ * gap.log system property (VERBOSE, DEBUG, INFO, WARN or ERROR, default WARN) go to System.err,
+ * the others are dropped.
+ */
+public final class Log {
+
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+	public static final int ASSERT = 7;
+
+	private static final String[] NAMES = {"", "", "VERBOSE", "DEBUG", "INFO", "WARN", "ERROR", "ASSERT"};
+
+	private static final int LEVEL = level(System.getProperty("gap.log", "WARN"));
+
+	private Log() {
+	}
+
+	private static int level(String name) {
+		for (int i = VERBOSE; i < NAMES.length; i++) {
+			if (NAMES[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return WARN;
+	}
+
+	public static int v(String tag, String msg) {
+		return println(VERBOSE, tag, msg);
+	}
+
+	public static int v(String tag, String msg, Throwable tr) {
+		return println(VERBOSE, tag, msg + '\n' + getStackTraceString(tr));
+	}
+
+	public static int d(String tag, String msg) {
+		return println(DEBUG, tag, msg);
+	}
+
+	public static int d(String tag, String msg, Throwable tr) {
+		return println(DEBUG, tag, msg + '\n' + getStackTraceString(tr));
+	}
+
+	public static int i(String tag, String msg) {
+		return println(INFO, tag, msg);
+	}
+
+	public static int i(String tag, String msg, Throwable tr) {
+		return println(INFO, tag, msg + '\n' + getStackTraceString(tr));
+	}
+
+	public static int w(String tag, String msg) {
+		return println(WARN, tag, msg);
+	}
+
+	public static int w(String tag, String msg, Throwable tr) {
+		return println(WARN, tag, msg + '\n' + getStackTraceString(tr));
+	}
+
+	public static int w(String tag, Throwable tr) {
+		return println(WARN, tag, getStackTraceString(tr));
+	}
+
+	public static int e(String tag, String msg) {
+		return println(ERROR, tag, msg);
+	}
+
+	public static int e(String tag, String msg, Throwable tr) {
+		return println(ERROR, tag, msg + '\n' + getStackTraceString(tr));
+	}
+
+	public static boolean isLoggable(String tag, int level) {
+		return level >= LEVEL;
+	}
+
+	public static String getStackTraceString(Throwable tr) {
+		if (tr == null) {
+			return "";
+		}
+		StringWriter sw = new StringWriter();
+		tr.printStackTrace(new PrintWriter(sw));
+		return sw.toString();
+	}
+
+	public static int println(int priority, String tag, String msg) {
+		if (priority < LEVEL) {
+			return 0;
+		}
+		String line = NAMES[priority].charAt(0) + "/" + tag + ": " + msg;
+		System.err.println(line);
+		return line.length();
+	}
+}
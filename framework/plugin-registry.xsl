@@ -0,0 +1,61 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+	Compiles res/xml/plugins.xml into GeneratedPluginRegistry.java, which creates the listed
+	plugins with direct constructor calls instead of Class.forName() and newInstance().
+	Run by the -pre-compile target of build.xml, the output goes to the gen directory.
+-->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+	<xsl:output method="text" encoding="UTF-8"/>
+
+	<xsl:template match="/plugins">
+		<xsl:text>/* Generated from res/xml/plugins.xml by plugin-registry.xsl. Do not edit. */
+package com.phonegap;
+
+import com.phonegap.api.IPlugin;
+
+import java.util.HashMap;
+
+/**
+ * Creates the plugins of res/xml/plugins.xml without reflection.
+ */
+final class GeneratedPluginRegistry implements PluginRegistry {
+
+	private final HashMap&lt;String, Integer&gt; ids = new HashMap&lt;String, Integer&gt;();
+
+	GeneratedPluginRegistry() {
+</xsl:text>
+		<xsl:for-each select="plugin">
+			<xsl:text>		this.ids.put("</xsl:text>
+			<xsl:value-of select="@value"/>
+			<xsl:text>", </xsl:text>
+			<xsl:value-of select="position()"/>
+			<xsl:text>);
+</xsl:text>
+		</xsl:for-each>
+		<xsl:text>	}
+
+	@Override
+	public IPlugin newPlugin(String className) {
+		Integer id = this.ids.get(className);
+		if (id == null) {
+			return null;
+		}
+		switch (id) {
+</xsl:text>
+		<xsl:for-each select="plugin">
+			<xsl:text>			case </xsl:text>
+			<xsl:value-of select="position()"/>
+			<xsl:text>:
+				return new </xsl:text>
+			<xsl:value-of select="@value"/>
+			<xsl:text>();
+</xsl:text>
+		</xsl:for-each>
+		<xsl:text>			default:
+				return null;
+		}
+	}
+}
+</xsl:text>
+	</xsl:template>
+</xsl:stylesheet>
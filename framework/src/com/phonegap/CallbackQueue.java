@@ -0,0 +1,364 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Multi-producer / single-consumer queue of JavaScript statements.
+ * <p/>
+ * Any number of threads may call {@link #offer(CharSequence)} at once. Adding is wait-free: a producer
+ * swaps itself in as the last node and links its predecessor to it, it never retries or blocks.
+ * {@link #peek()} and {@link #poll()} must only be called by one thread at a time.
+ * <p/>
+ * The size is reserved before a node is linked, so {@link #size()} never reports less than what
+ * has been added and not yet removed. A consumer that sees a reserved but not yet linked node
+ * spins until the producer links it, which is a few instructions away.
+ * <p/>
+ * A statement may be added with a coalescing key. If a statement with the same key is still
+ * queued, {@link #replace(CharSequence, String)} swaps the new one in place instead of adding it,
+ * so only the latest value of a key is ever waiting and it keeps the position of the first one.
+ * <p/>
+ * The consumer may also shed the oldest keyed statement with {@link #pollKeyed()}, which leaves an
+ * empty node behind that {@link #peek()} and {@link #poll()} skip.
+ * <p/>
+ * A statement is any CharSequence whose length doesn't change, such as a String or a
+ * {@link com.phonegap.api.Statement} that is serialized when it is sent.
+ * <p/>
+ * The queue records the number of statements queued as each one is added, the length of each one,
+ * and the time from adding it until it is taken by {@link #poll()}, also for the
+ * {@link Metrics.Action} that added it. Statements shed with {@link #drop()} or {@link #pollKeyed()}
+ * were never delivered, they are only counted.
+ */
+final class CallbackQueue {
+
+	private static final class Node {
+		volatile Node next;
+		volatile CharSequence value;
+		final String key;
+		final Metrics.Action action;
+		final String callbackId;
+		final long queued = System.nanoTime();
+
+		Node(CharSequence value, String key, Metrics.Action action, String callbackId) {
+			this.value = value;
+			this.key = key;
+			this.action = action;
+			this.callbackId = callbackId;
+		}
+	}
+
+	private static final AtomicReferenceFieldUpdater<Node, CharSequence> VALUE =
+			AtomicReferenceFieldUpdater.newUpdater(Node.class, CharSequence.class, "value");
+
+	/**
+	 * Last added node, producers swap in here.
+	 */
+	private final AtomicReference<Node> last;
+
+	/**
+	 * Stub node before the next statement, only touched by the consumer.
+	 */
+	private Node first;
+
+	/**
+	 * Node last taken by {@link #poll()}, only touched by the consumer.
+	 */
+	private Node taken;
+
+	/**
+	 * Number of statements added and not yet removed.
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Total length of the statements added and not yet removed.
+	 */
+	private final AtomicInteger chars = new AtomicInteger();
+
+	/**
+	 * Queued node of each coalescing key. An entry may point to a node that has been taken already.
+	 */
+	private final ConcurrentHashMap<String, Node> latest = new ConcurrentHashMap<String, Node>();
+
+	private final Histogram depth = new Histogram();
+	private final Histogram delivery = new Histogram();
+	private final Histogram payload = new Histogram();
+	private final AtomicLong dropped = new AtomicLong();
+
+	CallbackQueue() {
+		Node stub = new Node(null, null, null, null);
+		this.first = stub;
+		this.last = new AtomicReference<Node>(stub);
+	}
+
+	/**
+	 * Add a statement at the end of the queue. Safe to call from any thread.
+	 *
+	 * @param statement
+	 */
+	void offer(CharSequence statement) {
+		this.offer(statement, null, null);
+	}
+
+	/**
+	 * Add a statement at the end of the queue. Safe to call from any thread.
+	 *
+	 * @param statement
+	 * @param key        Coalescing key the statement can be replaced by, or null
+	 * @param callbackId Callback the statement calls, or null, used to tag its trace spans
+	 */
+	void offer(CharSequence statement, String key, String callbackId) {
+		if (statement == null) {
+			throw new NullPointerException();
+		}
+		Node node = new Node(statement, key, Metrics.current(), callbackId);
+		if (key != null) {
+			this.latest.put(key, node);
+		}
+		int length = statement.length();
+		int depth = this.size.incrementAndGet();
+		this.chars.addAndGet(length);
+		Node prev = this.last.getAndSet(node);
+		prev.next = node;
+
+		// Recorded once linked, so a consumer that sees the reserved size doesn't spin meanwhile
+		this.depth.record(depth);
+		this.payload.record(length);
+		if (node.action != null) {
+			node.action.payload.record(length);
+		}
+	}
+
+	/**
+	 * Replace the queued statement with the same key, if it has not been taken yet.
+	 * Safe to call from any thread.
+	 *
+	 * @param statement
+	 * @param key       Coalescing key
+	 * @return T=replaced, F=no statement with this key is queued
+	 */
+	boolean replace(CharSequence statement, String key) {
+		if (statement == null) {
+			throw new NullPointerException();
+		}
+		Node queued = this.latest.get(key);
+		if (queued == null) {
+			return false;
+		}
+
+		// The consumer nulls the value when it takes the node, after that it can't be replaced
+		CharSequence current;
+		while ((current = queued.value) != null) {
+			if (VALUE.compareAndSet(queued, current, statement)) {
+				this.chars.addAndGet(statement.length() - current.length());
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the length of the queued statement with the key. Safe to call from any thread.
+	 *
+	 * @param key Coalescing key
+	 * @return -1 if no statement with this key is queued
+	 */
+	int queuedLength(String key) {
+		Node queued = this.latest.get(key);
+		CharSequence value = queued != null ? queued.value : null;
+		return value != null ? value.length() : -1;
+	}
+
+	/**
+	 * Get the next statement without removing it. Consumer thread only.
+	 *
+	 * @return The next statement or null if the queue is empty
+	 */
+	CharSequence peek() {
+		Node next = this.next();
+		return next != null ? next.value : null;
+	}
+
+	/**
+	 * Remove and return the next statement. Consumer thread only.
+	 *
+	 * @return The next statement or null if the queue is empty
+	 */
+	CharSequence poll() {
+		Node next = this.next();
+		if (next == null) {
+			return null;
+		}
+		this.first = next;
+		this.taken = next;
+		CharSequence value = this.take(next);
+		long now = System.nanoTime();
+		long wait = (now - next.queued) / 1000;
+		this.delivery.record(wait);
+		Metrics.Action action = next.action;
+		if (action != null) {
+			action.delivery.record(wait);
+		}
+		if (Tracer.enabled()) {
+			Tracer.span("queued", next.queued, now, action != null ? action.service : null,
+					action != null ? action.action : null, next.callbackId, value.length());
+		}
+		return value;
+	}
+
+	/**
+	 * Remove and return the next statement, which is not going to be delivered. Consumer thread only.
+	 * Unlike {@link #poll()}, its time in the queue is not recorded, it is counted as dropped.
+	 *
+	 * @return The next statement or null if the queue is empty
+	 */
+	CharSequence drop() {
+		Node next = this.next();
+		if (next == null) {
+			return null;
+		}
+		this.first = next;
+		this.countDropped(next);
+		return this.take(next);
+	}
+
+	/**
+	 * Get the action that added the statement last taken by {@link #poll()}. Consumer thread only.
+	 *
+	 * @return The action or null
+	 */
+	Metrics.Action takenAction() {
+		return this.taken != null ? this.taken.action : null;
+	}
+
+	/**
+	 * Get the callback of the statement last taken by {@link #poll()}. Consumer thread only.
+	 *
+	 * @return The callback id or null
+	 */
+	String takenCallbackId() {
+		return this.taken != null ? this.taken.callbackId : null;
+	}
+
+	/**
+	 * Remove and return the oldest statement that has a coalescing key. Consumer thread only.
+	 * Used to shed stale state updates when the queue is full.
+	 *
+	 * @return The statement or null if no keyed statement is queued
+	 */
+	CharSequence pollKeyed() {
+		for (Node node = this.first.next; node != null; node = node.next) {
+			if (node.key != null && node.value != null) {
+				this.countDropped(node);
+				return this.take(node);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the number of statements added and not yet removed.
+	 *
+	 * @return int
+	 */
+	int size() {
+		return this.size.get();
+	}
+
+	/**
+	 * Get the total length of the statements added and not yet removed.
+	 *
+	 * @return int
+	 */
+	int chars() {
+		return this.chars.get();
+	}
+
+	boolean isEmpty() {
+		return this.size.get() == 0;
+	}
+
+	/**
+	 * Get the number of statements dropped instead of delivered.
+	 *
+	 * @return long
+	 */
+	long dropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Get the queue depth at each add, the length and time in microseconds until taken of the
+	 * statements, and the number dropped.
+	 *
+	 * @return
+	 * @throws JSONException
+	 */
+	JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("depth", this.depth.toJSON());
+		json.put("delivery", this.delivery.toJSON());
+		json.put("payload", this.payload.toJSON());
+		json.put("dropped", this.dropped.get());
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("depth[%s] delivery[%s] payload[%s] dropped=%d", this.depth, this.delivery, this.payload,
+				this.dropped.get());
+	}
+
+	/**
+	 * Get the first node after the stub that still has a statement, skipping shed nodes and waiting
+	 * for a producer that has reserved a node but not linked it yet.
+	 */
+	private Node next() {
+		for (; ; ) {
+			Node next = this.first.next;
+			if (next == null) {
+				if (this.size.get() == 0) {
+					return null;
+				}
+				Thread.yield();
+			} else if (next.value == null) {
+				this.first = next;
+			} else {
+				return next;
+			}
+		}
+	}
+
+	private void countDropped(Node node) {
+		this.dropped.incrementAndGet();
+		if (node.action != null) {
+			node.action.dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Take the statement out of a linked node.
+	 */
+	private CharSequence take(Node node) {
+		CharSequence value = VALUE.getAndSet(node, null);
+		if (node.key != null) {
+			this.latest.remove(node.key, node);
+		}
+		this.size.decrementAndGet();
+		this.chars.addAndGet(-value.length());
+		return value;
+	}
+}
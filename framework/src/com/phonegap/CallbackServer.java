@@ -7,12 +7,21 @@
  */
 package com.phonegap;
 
+import android.os.Looper;
 import android.util.Log;
+import com.phonegap.api.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.LinkedList;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class provides a way for Java to run JavaScript in the web page that has loaded PhoneGap.
@@ -27,6 +36,37 @@ import java.util.LinkedList;
  * 5. The client receives this XHR response, processes it.
  * 6. The client sends a new async XHR request.
  * <p/>
+ * If the client requests "/token?batch", the server drains every queued statement that fits into
+ * the batch budget (see {@link #setBatchLimits(int, int)}) into one response. Encoded statements
+ * are separated by '\n', so the client splits the response and evaluates each part in order.
+ * <p/>
+ * If the client requests "/token?stream", the response is held open with chunked transfer encoding
+ * and every statement is written as its own '\n' terminated chunk as soon as it is added. An empty
+ * frame is sent first and then every 10 sec. The stream is ended after {@link #STREAM_LIMIT} chars
+ * so the client can release the response text and reconnect. A stream takes at most one batch
+ * budget of statements at a time, and only once the previous ones have been written, so statements
+ * for a slow reader wait in the list, where the overflow policy applies.
+ * <p/>
+ * Before its first stream, the client requests "/token?probe", which is answered like a stream
+ * but only ever with the first empty frame. A client that sees that frame while the response is
+ * still loading closes the probe and opens the stream. A client that doesn't, because its WebView
+ * only hands out whole responses, falls back to the long-poll. No statement is lost either way.
+ * The probe ends when the client closes it or after {@link #STREAM_PROBE_TIMEOUT} ms.
+ * <p/>
+ * The XHR server is either this blocking one-connection-at-a-time loop, or, if {@link #setUseNio(boolean)}
+ * is set, the selector based {@link NioCallbackServer} which keeps connections alive between requests.
+ * <p/>
+ * Statements are kept in two lanes. Small latency critical events, like keyboard events and the
+ * buttons of a notification dialog, are added with {@link #sendInteractiveJavascript(String)} and are
+ * always taken before the bulk lane, so they don't wait behind a large file or database result.
+ * After {@link #INTERACTIVE_BURST} interactive statements in a row one bulk statement is taken,
+ * so bulk traffic still progresses under a flood of events.
+ * <p/>
+ * The bulk list is bounded by count and size (see {@link #setQueueLimits(int, int)}). When a statement
+ * doesn't fit, the {@link Overflow} policy decides what is given up, and every statement given up
+ * is counted by {@link #getOverflowCount()}. A coalesced statement that is larger than the one it
+ * replaces goes through the same policy for the difference.
+ * <p/>
  * The CallbackServer class requires the following permission in Android manifest file
  * <uses-permission android:name="android.permission.INTERNET" />
  * <p/>
@@ -42,10 +82,56 @@ class CallbackServer implements Runnable {
 
 	private static final String TAG = "GAP_" + CallbackServer.class.getSimpleName();
 
+	/**
+	 * What to do with a statement that doesn't fit into the list.
+	 */
+	enum Overflow {
+		/**
+		 * Remove the oldest statements until it fits.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Drop the new statement.
+		 */
+		DROP_NEWEST,
+		/**
+		 * Wait for the client to take statements, and drop the new one if the timeout expires.
+		 * Never waits on the UI thread, which takes the statements when polling is used.
+		 */
+		BLOCK,
+		/**
+		 * Remove the oldest statements that have a coalescing key, which are state updates that a
+		 * later update replaces anyway, and drop the new statement if that's not enough.
+		 */
+		COALESCE
+	}
+
 	/**
 	 * The list of JavaScript statements to be sent to JavaScript.
+	 * Plugin threads add to it, the server thread (or the UI thread when polling) removes from it.
+	 */
+	private final CallbackQueue javascript;
+
+	/**
+	 * The list of latency critical statements, sent before the others. Not bounded.
+	 */
+	private final CallbackQueue interactive;
+
+	/**
+	 * Number of interactive statements taken in a row while bulk statements were waiting.
+	 * Guarded by the consumer lock.
+	 */
+	private int interactiveRun;
+
+	/**
+	 * Serializes the consumers of the list, which are normally one at a time anyway.
 	 */
-	private LinkedList<String> javascript;
+	private final ReentrantLock consumerLock = new ReentrantLock();
+
+	/**
+	 * Thread parked until a statement is added, if any.
+	 */
+	private final AtomicReference<Thread> waiter = new AtomicReference<Thread>();
 
 	/**
 	 * The port to listen on.
@@ -58,14 +144,24 @@ class CallbackServer implements Runnable {
 	private Thread serverThread;
 
 	/**
-	 * Indicates the server is running.
+	 * Indicates that the non-blocking XHR server is used instead of the blocking one.
+	 */
+	private boolean useNio = false;
+
+	/**
+	 * Indicates that plugin results are sent as data-only records instead of callback statements.
+	 */
+	private volatile boolean records = false;
+
+	/**
+	 * The running non-blocking XHR server, if any.
 	 */
-	private boolean active;
+	private volatile NioCallbackServer nioServer;
 
 	/**
-	 * Indicates that the JavaScript statements list is empty
+	 * Indicates the server is running.
 	 */
-	private volatile boolean empty;
+	private volatile boolean active;
 
 	/**
 	 * Indicates that polling should be used instead of XHR.
@@ -77,15 +173,128 @@ class CallbackServer implements Runnable {
 	 */
 	private String token;
 
+	/**
+	 * Default max number of statements sent in one batch response.
+	 */
+	static final int DEFAULT_BATCH_COUNT = 100;
+
+	/**
+	 * Default max size in chars of the statements sent in one batch response.
+	 */
+	static final int DEFAULT_BATCH_SIZE = 128 * 1024;
+
+	/**
+	 * Max number of chars written to a stream before it is ended.
+	 */
+	static final int STREAM_LIMIT = 1024 * 1024;
+
+	/**
+	 * Time in ms a probe is held open for the client to close it.
+	 */
+	static final int STREAM_PROBE_TIMEOUT = 5000;
+
+	/**
+	 * Time in ms a stream has to be idle before the server checks that the client is still there.
+	 */
+	private static final long STREAM_IDLE_CHECK = 1000;
+
+	/**
+	 * Response headers of a stream.
+	 */
+	static final String STREAM_HEADERS = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n"
+			+ "Cache-Control: no-cache\r\nTransfer-Encoding: chunked\r\n\r\n";
+
+	/**
+	 * Empty stream frame, used as first frame and to keep the stream from timing out.
+	 */
+	static final String STREAM_PING = "1\r\n\n\r\n";
+
+	/**
+	 * Last chunk of a stream.
+	 */
+	static final String STREAM_END = "0\r\n\r\n";
+
+	/**
+	 * Max number of interactive statements taken in a row before a waiting bulk statement is taken.
+	 */
+	static final int INTERACTIVE_BURST = 8;
+
+	/**
+	 * Default max number of statements in the list.
+	 */
+	static final int DEFAULT_QUEUE_COUNT = 10000;
+
+	/**
+	 * Default max size in chars of the statements in the list.
+	 */
+	static final int DEFAULT_QUEUE_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Default time in milliseconds a producer waits for room with {@link Overflow#BLOCK}.
+	 */
+	static final int DEFAULT_BLOCK_TIMEOUT = 1000;
+
+	/**
+	 * Response of the blocking server, reused for every request. Server thread only.
+	 */
+	private final ResponseBuffer response = new ResponseBuffer(1024);
+
+	/**
+	 * Max number of statements sent in one batch response.
+	 */
+	private volatile int batchCount = DEFAULT_BATCH_COUNT;
+
+	/**
+	 * Max size in chars of the statements sent in one batch response.
+	 * A single statement larger than this is still sent, alone.
+	 */
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Max number of statements in the list.
+	 */
+	private volatile int queueCount = DEFAULT_QUEUE_COUNT;
+
+	/**
+	 * Max size in chars of the statements in the list.
+	 * A single statement larger than this is still added to an empty list.
+	 */
+	private volatile int queueSize = DEFAULT_QUEUE_SIZE;
+
+	/**
+	 * Policy for statements that don't fit into the list.
+	 */
+	private volatile Overflow overflow = Overflow.COALESCE;
+
+	/**
+	 * Time in milliseconds a producer waits for room with {@link Overflow#BLOCK}.
+	 */
+	private volatile int blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+
+	/**
+	 * Number of statements given up because the list was full.
+	 */
+	private final AtomicLong overflowCount = new AtomicLong();
+
+	/**
+	 * Monitor producers wait on for room with {@link Overflow#BLOCK}.
+	 */
+	private final Object room = new Object();
+
+	/**
+	 * Number of producers waiting for room, so consumers only notify when someone waits.
+	 */
+	private volatile int blockedProducers;
+
 	/**
 	 * Constructor.
 	 */
 	public CallbackServer() {
 		Log.d(TAG, "CallbackServer()");
 		this.active = false;
-		this.empty = true;
 		this.port = 0;
-		this.javascript = new LinkedList<String>();
+		this.javascript = new CallbackQueue();
+		this.interactive = new CallbackQueue();
 	}
 
 	/**
@@ -139,6 +348,116 @@ class CallbackServer implements Runnable {
 		return this.token;
 	}
 
+	/**
+	 * Get the max size in chars of the statements in one batch response.
+	 *
+	 * @return
+	 */
+	int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Set the budget of a batch response.
+	 *
+	 * @param count Max number of statements in one response, values < 1 are ignored
+	 * @param size  Max size in chars of the statements in one response, values < 1 are ignored
+	 */
+	public void setBatchLimits(int count, int size) {
+		if (count > 0) {
+			this.batchCount = count;
+		}
+		if (size > 0) {
+			this.batchSize = size;
+		}
+	}
+
+	/**
+	 * Set the bounds of the list of statements waiting to be sent.
+	 *
+	 * @param count Max number of statements, values < 1 are ignored
+	 * @param size  Max size in chars of the statements, values < 1 are ignored
+	 */
+	public void setQueueLimits(int count, int size) {
+		if (count > 0) {
+			this.queueCount = count;
+		}
+		if (size > 0) {
+			this.queueSize = size;
+		}
+	}
+
+	/**
+	 * Set what happens to a statement that doesn't fit into the list.
+	 *
+	 * @param policy       Name of an {@link Overflow} policy, case insensitive, null is ignored
+	 * @param blockTimeout Max time in milliseconds to wait for room with BLOCK, values < 1 are ignored
+	 */
+	public void setOverflowPolicy(String policy, int blockTimeout) {
+		if (policy != null) {
+			try {
+				this.overflow = Overflow.valueOf(policy.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				Log.e(TAG, "Unknown callback overflow policy: " + policy);
+			}
+		}
+		if (blockTimeout > 0) {
+			this.blockTimeout = blockTimeout;
+		}
+	}
+
+	/**
+	 * Get the number of statements given up because the list was full.
+	 *
+	 * @return long
+	 */
+	public long getOverflowCount() {
+		return this.overflowCount.get();
+	}
+
+	/**
+	 * Get the overflow count and the metrics of both lanes, see {@link CallbackQueue#toJSON()}.
+	 *
+	 * @return
+	 * @throws JSONException
+	 */
+	JSONObject getMetrics() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("overflow", this.getOverflowCount());
+		json.put("javascript", this.javascript.toJSON());
+		json.put("interactive", this.interactive.toJSON());
+		return json;
+	}
+
+	/**
+	 * Log the overflow count and the metrics of both lanes.
+	 */
+	void logMetrics() {
+		Log.i(TAG, "Callbacks overflow=" + this.getOverflowCount());
+		Log.i(TAG, "Callbacks javascript: " + this.javascript);
+		Log.i(TAG, "Callbacks interactive: " + this.interactive);
+	}
+
+	/**
+	 * Select the XHR server used the next time the server is started.
+	 *
+	 * @param useNio T=non-blocking server with persistent connections, F=blocking server
+	 */
+	public void setUseNio(boolean useNio) {
+		this.useNio = useNio;
+	}
+
+	/**
+	 * Select how plugin results are sent. A record is parsed with JSON.parse() by phonegap.js and
+	 * dispatched through a table, a statement has to be compiled and evaluated as new code.
+	 * Statements added with {@link #sendJavascript(CharSequence)} are always sent as they are.
+	 *
+	 * @param records T=data-only records, F=callback statements
+	 */
+	public void setRecords(boolean records) {
+		this.records = records;
+	}
+
 	/**
 	 * Start the server on a new thread.
 	 */
@@ -147,10 +466,51 @@ class CallbackServer implements Runnable {
 		this.active = false;
 
 		// Start server on new thread
-		this.serverThread = new Thread(this);
+		if (this.useNio) {
+			this.nioServer = new NioCallbackServer(this);
+			this.serverThread = new Thread(this.nioServer);
+		} else {
+			this.serverThread = new Thread(this);
+		}
 		this.serverThread.start();
 	}
 
+	/**
+	 * Called by the server thread once it listens on a port.
+	 *
+	 * @param port
+	 */
+	void started(int port) {
+		this.port = port;
+		Log.d(TAG, "CallbackServer -- using port " + this.port);
+		this.token = java.util.UUID.randomUUID().toString();
+		Log.d(TAG, "CallbackServer -- using token " + this.token);
+
+		// Last, so that port and token are set once the server is seen as active
+		this.active = true;
+	}
+
+	/**
+	 * Called by the non-blocking server thread when it exits.
+	 *
+	 * @param server
+	 */
+	void stopped(NioCallbackServer server) {
+		if (this.nioServer == server) {
+			this.nioServer = null;
+			this.active = false;
+		}
+	}
+
+	/**
+	 * Indicates the server is running.
+	 *
+	 * @return
+	 */
+	boolean isActive() {
+		return this.active;
+	}
+
 	/**
 	 * Restart the server on a new thread.
 	 */
@@ -172,85 +532,197 @@ class CallbackServer implements Runnable {
 
 		// Start server
 		try {
-			this.active = true;
 			String request;
 			ServerSocket waitSocket = new ServerSocket(0);
-			this.port = waitSocket.getLocalPort();
-			Log.d(TAG, "CallbackServer -- using port " + this.port);
-			this.token = java.util.UUID.randomUUID().toString();
-			Log.d(TAG, "CallbackServer -- using token " + this.token);
+			this.started(waitSocket.getLocalPort());
 
 			while (this.active) {
 				//Log.v(TAG, "CallbackServer: Waiting for data on socket");
 				Socket connection = waitSocket.accept();
 				BufferedReader xhrReader = new BufferedReader(new InputStreamReader(connection.getInputStream()), 40);
-				DataOutputStream output = new DataOutputStream(connection.getOutputStream());
+				OutputStream output = connection.getOutputStream();
 				request = xhrReader.readLine();
-				String response = "";
+				ResponseBuffer response = this.response;
+				response.reset();
 				//Log.d(TAG, "Request=" + request);
 				if (this.active && (request != null)) {
 					if (request.contains("GET")) {
 
 						// Get requested file
 						String[] requestParts = request.split(" ");
+						String path = (requestParts.length == 3) ? requestParts[1].substring(1) : "";
+						String query = "";
+						int q = path.indexOf('?');
+						if (q >= 0) {
+							query = path.substring(q + 1);
+							path = path.substring(0, q);
+						}
+						boolean batch = query.equals("batch");
 
 						// Must have security token
-						if ((requestParts.length == 3) && (requestParts[1].substring(1).equals(this.token))) {
+						if ((requestParts.length == 3) && (path.equals(this.token)) && query.equals("probe")) {
+							try {
+								this.probe(connection, output);
+							} catch (IOException e) {
+								Log.d(TAG, "Probe closed: " + e);
+							}
+							response.reset();
+						} else if ((requestParts.length == 3) && (path.equals(this.token)) && query.equals("stream")) {
+							try {
+								this.stream(connection, output);
+							} catch (IOException e) {
+								Log.d(TAG, "Stream closed: " + e);
+							}
+							response.reset();
+						} else if ((requestParts.length == 3) && (path.equals(this.token))) {
 							//Log.v(TAG, "Processing GET request");
 
 							// Wait until there is some data to send, or send empty data every 10 sec
 							// to prevent XHR timeout on the client
-							synchronized (this) {
-								while (this.empty) {
-									try {
-										this.wait(10000); // prevent timeout from happening
-										//Log.v(TAG, ">>> break <<< Look-ahead: " + ((javascript != null) ? javascript.peek() : ""));
-										break;
-									} catch (InterruptedException e) {
-										Log.i(TAG, "wait empty interrupted");
-									}
-								}
-							}
+							boolean empty = !this.awaitJavascript(10000);
 
 							// If server is still running
 							if (this.active) {
 
 								// If no data, then send 404 back to client before it times out
-								if (this.empty) {
+								if (empty) {
 									//Log.v(TAG, "Sending zero data 404.");
-									response = "HTTP/1.1 404 NO DATA\r\n\r\n "; // need to send content otherwise some Android devices fail, so send space
+									response.append("HTTP/1.1 404 NO DATA\r\n\r\n "); // need to send content otherwise some Android devices fail, so send space
 								} else {
 									//Log.v(TAG, "Sending JavaScript");
-									response = "HTTP/1.1 200 OK\r\n\r\n";
-									String js = this.getJavascript();
-									if (js != null) {
-										response += encode(js, "UTF-8");
-									}
+									response.append("HTTP/1.1 200 OK\r\n\r\n");
+									this.drainJavascript(response, batch);
 								}
 							} else {
-								response = "HTTP/1.1 503 Service Unavailable\r\n\r\n ";
+								response.append("HTTP/1.1 503 Service Unavailable\r\n\r\n ");
 							}
 						} else {
-							response = "HTTP/1.1 403 Forbidden\r\n\r\n ";
+							response.append("HTTP/1.1 403 Forbidden\r\n\r\n ");
 						}
 					} else {
-						response = "HTTP/1.1 400 Bad Request\r\n\r\n ";
+						response.append("HTTP/1.1 400 Bad Request\r\n\r\n ");
+					}
+					// The length only, the response may be up to a whole batch
+					if (Log.isLoggable(TAG, Log.DEBUG) && this.hasJavascript()) {
+						Log.d(TAG, "Closing output. Length=" + response.length());
+					}
+					if (response.length() > 0) {
+						long start = Tracer.begin();
+						response.writeTo(output);
+						output.flush();
+						if (start != 0) {
+							Tracer.span("write", start, System.nanoTime(), null, null, null, response.length());
+						}
 					}
-					if (!this.empty) Log.d(TAG, "Closing output. Resp=" + response);
-					output.writeBytes(response);
-					output.flush();
 				}
-				output.close();
-				xhrReader.close();
+				try {
+					output.close();
+					xhrReader.close();
+				} catch (IOException e) {
+					Log.d(TAG, "Close failed: " + e);
+				}
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			Log.e(TAG, "IO", e);
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Server failed", e);
 		}
 		this.active = false;
 		Log.d(TAG, "CallbackServer.startServer() - EXIT");
 	}
 
+	/**
+	 * Write statements to a held open chunked response as soon as they are added.
+	 * Returns when the stream limit is reached, the server stops or the client goes away.
+	 *
+	 * @param connection
+	 * @param output
+	 * @throws IOException
+	 */
+	private void stream(Socket connection, OutputStream output) throws IOException {
+		Log.d(TAG, "Streaming");
+		ResponseBuffer frames = this.response;
+		frames.reset();
+		frames.append(STREAM_HEADERS).append(STREAM_PING).writeTo(output);
+		output.flush();
+		int written = 0;
+		while (this.active && written < STREAM_LIMIT) {
+			long waiting = System.currentTimeMillis();
+			boolean empty = !this.awaitJavascript(10000);
+
+			// Don't take statements out of the list for a client that went away while the stream was
+			// idle. While statements keep coming, a client that is gone shows up as a failed write.
+			if (System.currentTimeMillis() - waiting >= STREAM_IDLE_CHECK && isClosed(connection, 1)) {
+				Log.d(TAG, "Stream closed by client");
+				return;
+			}
+			frames.reset();
+			if (empty) {
+				frames.append(STREAM_PING);
+			} else {
+				written += this.drainFrames(frames, Math.min(STREAM_LIMIT - written, this.batchSize));
+			}
+			long start = Tracer.begin();
+			frames.writeTo(output);
+			output.flush();
+			if (start != 0) {
+				Tracer.span("write", start, System.nanoTime(), null, null, null, frames.length());
+			}
+		}
+		frames.reset();
+		frames.append(STREAM_END).writeTo(output);
+		output.flush();
+	}
+
+	/**
+	 * Answer a probe: the stream headers and the first empty frame, but no statement.
+	 * Returns when the client closes it, the probe times out or the server stops.
+	 *
+	 * @param connection
+	 * @param output
+	 * @throws IOException
+	 */
+	private void probe(Socket connection, OutputStream output) throws IOException {
+		ResponseBuffer frames = this.response;
+		frames.reset();
+		frames.append(STREAM_HEADERS).append(STREAM_PING).writeTo(output);
+		output.flush();
+		long deadline = System.currentTimeMillis() + STREAM_PROBE_TIMEOUT;
+		while (this.active && System.currentTimeMillis() < deadline) {
+			if (isClosed(connection, 100)) {
+				return;
+			}
+		}
+		frames.reset();
+		frames.append(STREAM_END).writeTo(output);
+		output.flush();
+	}
+
+	/**
+	 * Check if the client closed the connection, waiting at most the given time for it.
+	 * Anything the client sent after the request line is discarded.
+	 *
+	 * @param connection
+	 * @param timeout    Time in ms
+	 * @return T=closed
+	 */
+	private static boolean isClosed(Socket connection, int timeout) {
+		try {
+			connection.setSoTimeout(timeout);
+			InputStream input = connection.getInputStream();
+			byte[] discard = new byte[256];
+			while (input.read(discard) >= 0) {
+				// skip the rest of the request
+			}
+			return true;
+		} catch (SocketTimeoutException e) {
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
 	/**
 	 * Stop server.
 	 * This stops the thread that the server is running on.
@@ -261,8 +733,10 @@ class CallbackServer implements Runnable {
 			this.active = false;
 
 			// Break out of server wait
-			synchronized (this) {
-				this.notify();
+			this.wakeUp();
+			NioCallbackServer nio = this.nioServer;
+			if (nio != null) {
+				nio.wakeUpNow();
 			}
 		}
 	}
@@ -280,7 +754,7 @@ class CallbackServer implements Runnable {
 	 * @return int
 	 */
 	public int getSize() {
-		int size = this.javascript.size();
+		int size = this.javascript.size() + this.interactive.size();
 		Log.d(TAG, "getSize() = " + size);
 		return size;
 	}
@@ -291,109 +765,459 @@ class CallbackServer implements Runnable {
 	 * @return String
 	 */
 	public String getJavascript() {
-		if (this.javascript.size() == 0) {
+		this.consumerLock.lock();
+		try {
+			CharSequence next;
+			CallbackQueue lane;
+			while ((next = (lane = this.nextLane()).poll()) != null) {
+				this.took(lane);
+				try {
+					String statement = next.toString();
+					Log.v(TAG, "getJS()=" + statement);
+					return statement;
+				} catch (RuntimeException e) {
+					dropFailed(next, e);
+				}
+			}
 			// Log.v(TAG, "getJS(): No new JS available");
 			return null;
+		} finally {
+			this.consumerLock.unlock();
+			this.roomMade();
 		}
-		String statement = this.javascript.remove(0);
-		Log.v(TAG, "getJS()=" + statement);
-		if (this.javascript.size() == 0) {
-			synchronized (this) {
-				this.empty = true;
+	}
+
+	/**
+	 * Indicates that there are JavaScript statements in the list.
+	 *
+	 * @return
+	 */
+	boolean hasJavascript() {
+		return !this.interactive.isEmpty() || !this.javascript.isEmpty();
+	}
+
+	/**
+	 * Get the lane the next statement is taken from: the interactive one if it has statements,
+	 * unless it has had its burst while bulk statements wait. Consumer lock must be held.
+	 * Looking doesn't use up a turn, see {@link #took(CallbackQueue)}.
+	 *
+	 * @return The lane, which may be empty
+	 */
+	private CallbackQueue nextLane() {
+		if (this.interactive.isEmpty()) {
+			return this.javascript;
+		}
+		if (this.javascript.isEmpty() || this.interactiveRun < INTERACTIVE_BURST) {
+			return this.interactive;
+		}
+		return this.javascript;
+	}
+
+	/**
+	 * Count a statement taken from a lane towards the interactive burst. Consumer lock must be held.
+	 *
+	 * @param lane
+	 */
+	private void took(CallbackQueue lane) {
+		if (lane == this.interactive && !this.javascript.isEmpty()) {
+			this.interactiveRun++;
+		} else {
+			this.interactiveRun = 0;
+		}
+	}
+
+	/**
+	 * Remove the next statement, or as many statements as fit into the batch budget, from the list
+	 * and append them URL encoded to the response body.
+	 * Batched statements are separated by '\n', which never occurs in encoded data.
+	 * The first statement is always taken, even if it is larger than the budget.
+	 *
+	 * @param out   Response body
+	 * @param batch T=drain a batch, F=only the next statement
+	 * @return The number of statements taken
+	 */
+	int drainJavascript(ResponseBuffer out, boolean batch) {
+		int max = batch ? this.batchCount : 1;
+		int count = 0;
+		int size = 0;
+		this.consumerLock.lock();
+		try {
+			while (count < max) {
+				CallbackQueue lane = this.nextLane();
+				CharSequence next = lane.peek();
+				if (next == null) {
+					break;
+				}
+				int length;
+				try {
+					length = next.length();
+				} catch (RuntimeException e) {
+					dropFailed(lane.drop(), e);
+					continue;
+				}
+				if (count > 0 && size + length > this.batchSize) {
+					break;
+				}
+
+				// A coalesced statement may have been replaced since the peek, send the latest one
+				next = lane.poll();
+				this.took(lane);
+				int mark = out.length();
+				try {
+					if (count > 0) {
+						out.append('\n');
+					}
+					long start = Tracer.begin();
+					out.appendEncoded(next);
+					traceSerialized(start, lane);
+					size += next.length();
+					count++;
+				} catch (RuntimeException e) {
+					out.truncate(mark);
+					dropFailed(next, e);
+				}
 			}
+		} finally {
+			this.consumerLock.unlock();
+			this.roomMade();
+		}
+		Log.v(TAG, "drainJS() took " + count);
+		return count;
+	}
+
+	/**
+	 * Remove statements from the list and append each one URL encoded as a '\n' terminated chunk.
+	 *
+	 * @param out   Response body of a stream
+	 * @param limit Stop taking statements once this many chars have been appended
+	 * @return The number of chars appended
+	 */
+	int drainFrames(ResponseBuffer out, int limit) {
+		int start = out.length();
+		this.consumerLock.lock();
+		try {
+			CharSequence next;
+			CallbackQueue lane;
+			while (out.length() - start < limit && (next = (lane = this.nextLane()).poll()) != null) {
+				this.took(lane);
+				int mark = out.length();
+				try {
+					long serializing = Tracer.begin();
+					int chunkSize = out.appendChunkSize();
+					int chunk = out.append("\r\n").length();
+					out.appendEncoded(next).append("\n");
+					out.setChunkSize(chunkSize, out.length() - chunk);
+					out.append("\r\n");
+					traceSerialized(serializing, lane);
+				} catch (RuntimeException e) {
+					out.truncate(mark);
+					dropFailed(next, e);
+				}
+			}
+		} finally {
+			this.consumerLock.unlock();
+			this.roomMade();
+		}
+		return out.length() - start;
+	}
+
+	/**
+	 * Log a statement taken from the list that could not be serialized, such as one whose JSON a
+	 * plugin changed while it was written. The statements after it are still sent.
+	 *
+	 * @param statement
+	 * @param e
+	 */
+	private static void dropFailed(CharSequence statement, RuntimeException e) {
+		Log.e(TAG, "Dropped statement that failed to serialize: "
+				+ (statement != null ? statement.getClass().getSimpleName() : null), e);
+	}
+
+	/**
+	 * Record the trace span of serializing the statement last taken from a lane.
+	 *
+	 * @param start What {@link Tracer#begin()} returned
+	 * @param lane
+	 */
+	private static void traceSerialized(long start, CallbackQueue lane) {
+		if (start != 0) {
+			Metrics.Action action = lane.takenAction();
+			Tracer.end(start, "serialize", action != null ? action.service : null,
+					action != null ? action.action : null, lane.takenCallbackId());
 		}
-		return statement;
 	}
 
 	/**
 	 * Add a JavaScript statement to the list.
+	 * A {@link com.phonegap.api.Statement} is serialized when it is sent, straight into the response.
 	 *
 	 * @param statement
 	 */
+	public void sendJavascript(CharSequence statement) {
+		this.sendJavascript(statement, null);
+	}
+
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendJavascript(CharSequence)
+	 */
 	public void sendJavascript(String statement) {
-		Log.v(TAG, "sendJS=" + statement);
-		this.javascript.add(statement);
-		synchronized (this) {
-			this.empty = false;
-			this.notify();
-		}
-	}
-
-	/* The Following code has been modified from original implementation of URLEncoder */
-
-	/* start */
-
-	/*
-		 *  Licensed to the Apache Software Foundation (ASF) under one or more
-		 *  contributor license agreements.  See the NOTICE file distributed with
-		 *  this work for additional information regarding copyright ownership.
-		 *  The ASF licenses this file to You under the Apache License, Version 2.0
-		 *  (the "License"); you may not use this file except in compliance with
-		 *  the License.  You may obtain a copy of the License at
-		 *
-		 *     http://www.apache.org/licenses/LICENSE-2.0
-		 *
-		 *  Unless required by applicable law or agreed to in writing, software
-		 *  distributed under the License is distributed on an "AS IS" BASIS,
-		 *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-		 *  See the License for the specific language governing permissions and
-		 *  limitations under the License.
-		 */
-	private static final String digits = "0123456789ABCDEF";
-
-	/**
-	 * This will encode the return value to JavaScript.  We revert the encoding for
-	 * common characters that don't require encoding to reduce the size of the string
-	 * being passed to JavaScript.
-	 *
-	 * @param s   to be encoded
-	 * @param enc encoding type
-	 * @return encoded string
-	 */
-	private static String encode(String s, String enc) throws UnsupportedEncodingException {
-		if (s == null || enc == null) {
-			throw new NullPointerException();
-		}
-		// check for UnsupportedEncodingException
-		"".getBytes(enc);
-
-		// Guess a bit bigger for encoded form
-		StringBuilder buf = new StringBuilder(s.length() + 16);
-		int start = -1;
-		for (int i = 0; i < s.length(); i++) {
-			char ch = s.charAt(i);
-			if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')
-					|| (ch >= '0' && ch <= '9')
-					|| " .-*_'(),<>=?@[]{}:~\"\\/;!".indexOf(ch) > -1) {
-				if (start >= 0) {
-					convert(s.substring(start, i), buf, enc);
-					start = -1;
+		this.sendJavascript((CharSequence) statement, null);
+	}
+
+	/**
+	 * Add a JavaScript statement to the list, replacing the statement with the same coalescing key
+	 * if that one has not been sent yet. Used for state updates where only the latest value matters.
+	 *
+	 * @param statement
+	 * @param coalesceKey Key of the value the statement updates, or null to always add
+	 */
+	public void sendJavascript(CharSequence statement, String coalesceKey) {
+		this.send(statement, coalesceKey, null);
+	}
+
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendJavascript(CharSequence, String)
+	 */
+	public void sendJavascript(String statement, String coalesceKey) {
+		this.send(statement, coalesceKey, null);
+	}
+
+	/**
+	 * @param callbackId Callback the statement calls, or null, used to tag its trace spans
+	 * @see #sendJavascript(CharSequence, String)
+	 */
+	private void send(CharSequence statement, String coalesceKey, String callbackId) {
+		if (Log.isLoggable(TAG, Log.VERBOSE)) {
+			Log.v(TAG, "sendJS=" + statement);
+		}
+		if (coalesceKey != null) {
+			int queued = this.javascript.queuedLength(coalesceKey);
+			if (queued >= 0) {
+				int grown = statement.length() - queued;
+				if (grown > 0 && this.isFull(0, grown) && !this.makeRoom(0, grown)) {
+					this.overflowed();
+					return;
 				}
-				if (ch != ' ') {
-					buf.append(ch);
-				} else {
-					buf.append(' ');
+				if (this.javascript.replace(statement, coalesceKey)) {
+					return;
 				}
-			} else {
-				if (start < 0) {
-					start = i;
+				// Taken or given up meanwhile, add it as a new statement
+			}
+		}
+		if (this.isFull(1, statement.length()) && !this.makeRoom(1, statement.length())) {
+			this.overflowed();
+			return;
+		}
+		this.javascript.offer(statement, coalesceKey, callbackId);
+		this.wakeUp();
+	}
+
+	/**
+	 * Count and log a new statement dropped because it doesn't fit.
+	 */
+	private void overflowed() {
+		long dropped = this.overflowCount.incrementAndGet();
+		Log.w(TAG, "Callback list full, dropped statement (" + dropped + " so far)");
+	}
+
+	/**
+	 * Add the callback of a plugin result to the list.
+	 *
+	 * @param result
+	 * @param callbackId
+	 * @param success     T=call the success callback, F=the error callback
+	 * @param coalesceKey Key of the value the result updates, or null to always add
+	 */
+	public void sendResult(PluginResult result, String callbackId, boolean success, String coalesceKey) {
+		this.send(this.callbackOf(result, callbackId, success), coalesceKey, callbackId);
+	}
+
+	/**
+	 * Add the callback of a latency critical plugin result to the interactive lane.
+	 *
+	 * @param result
+	 * @param callbackId
+	 * @param success    T=call the success callback, F=the error callback
+	 */
+	public void sendInteractiveResult(PluginResult result, String callbackId, boolean success) {
+		this.sendInteractive(this.callbackOf(result, callbackId, success), callbackId);
+	}
+
+	/**
+	 * Get the record or statement that passes a result to its callback. The record picks the
+	 * callback from the status, a result sent to the other one goes as statement.
+	 */
+	private CharSequence callbackOf(PluginResult result, String callbackId, boolean success) {
+		if (this.records && success == result.isSuccess()) {
+			return result.toRecord(callbackId);
+		}
+		return success ? result.toSuccessCallback(callbackId) : result.toErrorCallback(callbackId);
+	}
+
+	/**
+	 * Add a latency critical JavaScript statement, such as a key or keyboard event, to the interactive
+	 * lane. It is sent before the statements of the bulk list and is never dropped.
+	 *
+	 * @param statement
+	 */
+	public void sendInteractiveJavascript(CharSequence statement) {
+		this.sendInteractive(statement, null);
+	}
+
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendInteractiveJavascript(CharSequence)
+	 */
+	public void sendInteractiveJavascript(String statement) {
+		this.sendInteractive(statement, null);
+	}
+
+	private void sendInteractive(CharSequence statement, String callbackId) {
+		if (Log.isLoggable(TAG, Log.VERBOSE)) {
+			Log.v(TAG, "sendInteractiveJS=" + statement);
+		}
+		this.interactive.offer(statement, null, callbackId);
+		this.wakeUp();
+	}
+
+	/**
+	 * Check if a statement doesn't fit into the list. A statement alone in the list always fits.
+	 * Concurrent producers may each see room, so the bounds can be exceeded by a few statements.
+	 *
+	 * @param added  1 for a new statement, 0 for one that replaces a queued one
+	 * @param length Length of the statement, or by how much it is longer than the one it replaces
+	 * @return T=full
+	 */
+	private boolean isFull(int added, int length) {
+		int count = this.javascript.size() + added;
+		return count > this.queueCount || (count > 1 && this.javascript.chars() + length > this.queueSize);
+	}
+
+	/**
+	 * Apply the overflow policy to make room for a statement.
+	 *
+	 * @param added  1 for a new statement, 0 for one that replaces a queued one
+	 * @param length Length of the statement, or by how much it is longer than the one it replaces
+	 * @return T=the statement fits now, F=it is to be dropped
+	 */
+	private boolean makeRoom(int added, int length) {
+		switch (this.overflow) {
+			case DROP_OLDEST:
+			case COALESCE:
+				boolean keyedOnly = this.overflow == Overflow.COALESCE;
+				this.consumerLock.lock();
+				try {
+					while (this.isFull(added, length)) {
+						CharSequence dropped = keyedOnly ? this.javascript.pollKeyed() : this.javascript.drop();
+						if (dropped == null) {
+							return false;
+						}
+						this.overflowCount.incrementAndGet();
+					}
+					return true;
+				} finally {
+					this.consumerLock.unlock();
 				}
+			case BLOCK:
+				return this.awaitRoom(added, length);
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Wait until a statement fits into the list or the block timeout expires.
+	 *
+	 * @param added  1 for a new statement, 0 for one that replaces a queued one
+	 * @param length Length of the statement, or by how much it is longer than the one it replaces
+	 * @return T=the statement fits
+	 */
+	private boolean awaitRoom(int added, int length) {
+		// The UI thread takes the statements when polling, it must not wait for itself
+		if (Looper.myLooper() == Looper.getMainLooper()) {
+			return false;
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.blockTimeout);
+		synchronized (this.room) {
+			// Count in before checking, so a consumer that makes room either is seen or notifies
+			this.blockedProducers++;
+			try {
+				while (this.isFull(added, length)) {
+					long left = deadline - System.nanoTime();
+					if (left <= 0) {
+						return false;
+					}
+					TimeUnit.NANOSECONDS.timedWait(this.room, left);
+				}
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				this.blockedProducers--;
 			}
 		}
-		if (start >= 0) {
-			convert(s.substring(start, s.length()), buf, enc);
+	}
+
+	/**
+	 * Notify producers waiting for room after statements were taken from the list.
+	 */
+	private void roomMade() {
+		if (this.blockedProducers > 0) {
+			synchronized (this.room) {
+				this.room.notifyAll();
+			}
 		}
-		return buf.toString();
 	}
 
-	private static void convert(String s, StringBuilder buf, String enc) throws UnsupportedEncodingException {
-		byte[] bytes = s.getBytes(enc);
-		for (int j = 0; j < bytes.length; j++) {
-			buf.append('%');
-			buf.append(digits.charAt((bytes[j] & 0xf0) >> 4));
-			buf.append(digits.charAt(bytes[j] & 0xf));
+	/**
+	 * Wait until there is a JavaScript statement in the list, the timeout expires or the server stops.
+	 * Only one thread may wait at a time, which is the server thread.
+	 *
+	 * @param timeout Max time to wait in milliseconds
+	 * @return T=the list has statements
+	 */
+	private boolean awaitJavascript(long timeout) {
+		Thread current = Thread.currentThread();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+		// Publish the waiter before checking the list, so an add either is seen here
+		// or sees the waiter and unparks it
+		this.waiter.set(current);
+		try {
+			while (this.active && !this.hasJavascript()) {
+				long left = deadline - System.nanoTime();
+				if (left <= 0) {
+					break;
+				}
+				LockSupport.parkNanos(this, left);
+				if (Thread.interrupted()) {
+					Log.i(TAG, "wait empty interrupted");
+					break;
+				}
+			}
+		} finally {
+			this.waiter.compareAndSet(current, null);
 		}
+		return this.hasJavascript();
 	}
 
-	/* end */
+	/**
+	 * Unpark the thread waiting for JavaScript statements, if any.
+	 */
+	private void wakeUp() {
+		Thread thread = this.waiter.get();
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		NioCallbackServer nio = this.nioServer;
+		if (nio != null) {
+			nio.wakeUp();
+		}
+	}
 }
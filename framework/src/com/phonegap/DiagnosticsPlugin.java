@@ -0,0 +1,35 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import com.phonegap.api.Plugin;
+import com.phonegap.api.PluginAction;
+import com.phonegap.api.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Exposes the bridge metrics to JavaScript, see {@link Metrics} for what is recorded.
+ * <p/>
+ * metrics - {actions, executor, cache, callbacks}, times in microseconds except for the executor
+ * statistics, which are in milliseconds
+ * log - write the metrics to logcat
+ */
+public class DiagnosticsPlugin extends Plugin {
+
+	@PluginAction
+	PluginResult metrics(JSONArray args, String callbackId) throws JSONException {
+		return new PluginResult(PluginResult.Status.OK, this.ctx.getMetrics());
+	}
+
+	@PluginAction
+	PluginResult log(JSONArray args, String callbackId) {
+		this.ctx.logMetrics();
+		return new PluginResult(PluginResult.Status.OK);
+	}
+}
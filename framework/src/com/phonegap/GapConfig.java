@@ -1,36 +1,166 @@
 package com.phonegap;
 
 import android.app.Activity;
-import android.content.Context;
+import android.content.Intent;
 import android.content.res.XmlResourceParser;
+import android.graphics.Color;
 import android.os.Bundle;
 import com.phonegap.api.LOG;
 import org.jetbrains.annotations.Nullable;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.regex.Pattern;
+import java.util.HashMap;
+import java.util.Map;
 
-class GapConfig {
+/**
+ * Configuration of a GapView, read once from res/xml/phonegap.xml and the extras of the intent of
+ * the activity, so the view reads plain fields instead of looking up extras on each page load.
+ * <p/>
+ * An extra overrides the preference of the same name from phonegap.xml. The configuration is
+ * immutable: a new intent gives a new one, see {@link #withIntent(Intent)}.
+ */
+final class GapConfig {
 	private static final String TAG = "GAP_" + GapConfig.class.getSimpleName();
 
 	/**
-	 * Load PhoneGap configuration from res/xml/phonegap.xml.
+	 * Default of loadUrlTimeoutValue, in ms.
+	 */
+	static final int DEFAULT_LOAD_URL_TIMEOUT = 20000;
+
+	/**
+	 * Background color of the activity.
+	 */
+	final int backgroundColor;
+	/**
+	 * Resource id of the splash screen, 0 for none.
+	 */
+	final int splashscreen;
+	/**
+	 * Load links to other servers in the web view rather than in the browser.
+	 */
+	final boolean loadInWebView;
+	/**
+	 * Time a page has to load before the load is reported as an error, in ms.
+	 */
+	final int loadUrlTimeoutValue;
+	/**
+	 * Keep JavaScript timers running while paused.
+	 */
+	final boolean keepRunning;
+	/**
+	 * "title,message" of the dialog shown while the first page loads, "" for the default text.
+	 */
+	@Nullable
+	final String loadingDialog;
+	/**
+	 * Same as loadingDialog, for the pages after the first.
+	 */
+	@Nullable
+	final String loadingPageDialog;
+	/**
+	 * Page to show when a page fails to load.
+	 */
+	@Nullable
+	final String errorUrl;
+	/**
+	 * Write a Chrome trace of the bridge to the cache directory.
+	 */
+	final boolean trace;
+	/**
+	 * Log the bridge metrics every that many seconds, 0 for never.
+	 */
+	final int metricsLogInterval;
+
+	// Callback server, 0 or null for its default
+
+	/**
+	 * Use the non-blocking XHR server with persistent connections.
+	 */
+	final boolean callbackServerNio;
+	/**
+	 * Budget of a batch XHR callback response.
+	 */
+	final int callbackBatchCount;
+	final int callbackBatchSize;
+	/**
+	 * Bounds of the list of callbacks waiting for the page.
+	 */
+	final int callbackQueueCount;
+	final int callbackQueueSize;
+	/**
+	 * What to do when the list is full: DROP_OLDEST, DROP_NEWEST, BLOCK or COALESCE.
+	 */
+	@Nullable
+	final String callbackOverflow;
+	/**
+	 * How long BLOCK waits, in ms.
+	 */
+	final int callbackBlockTimeout;
+	/**
+	 * Send plugin results as data-only records instead of statements.
+	 */
+	final boolean callbackRecords;
+
+	/**
+	 * Preferences of phonegap.xml, by name.
+	 */
+	private final Map<String, String> preferences;
+	/**
+	 * Extras of the intents received, the latest last.
+	 */
+	private final Bundle extras;
+
+	private GapConfig(Map<String, String> preferences, Bundle extras) {
+		this.preferences = preferences;
+		this.extras = extras;
+		this.backgroundColor = this.getInteger("backgroundColor", Color.BLACK);
+		this.splashscreen = this.getInteger("splashscreen", 0);
+		this.loadInWebView = this.getBoolean("loadInWebView", false);
+		int timeout = this.getInteger("loadUrlTimeoutValue", 0);
+		this.loadUrlTimeoutValue = timeout > 0 ? timeout : DEFAULT_LOAD_URL_TIMEOUT;
+		this.keepRunning = this.getBoolean("keepRunning", true);
+		this.loadingDialog = this.getString("loadingDialog");
+		this.loadingPageDialog = this.getString("loadingPageDialog");
+		this.errorUrl = this.getString("errorUrl");
+		this.trace = this.getBoolean("trace", false);
+		this.metricsLogInterval = this.getInteger("metricsLogInterval", 0);
+		this.callbackServerNio = this.getBoolean("callbackServerNio", false);
+		this.callbackBatchCount = this.getInteger("callbackBatchCount", 0);
+		this.callbackBatchSize = this.getInteger("callbackBatchSize", 0);
+		this.callbackQueueCount = this.getInteger("callbackQueueCount", 0);
+		this.callbackQueueSize = this.getInteger("callbackQueueSize", 0);
+		this.callbackOverflow = this.getString("callbackOverflow");
+		this.callbackBlockTimeout = this.getInteger("callbackBlockTimeout", 0);
+		this.callbackRecords = this.getBoolean("callbackRecords", false);
+	}
+
+	/**
+	 * Load PhoneGap configuration from res/xml/phonegap.xml and the intent that started the activity.
 	 * Approved list of URLs that can be loaded into DroidGap
 	 * <access origin="http://server regexp" subdomains="true" />
 	 * Log level: ERROR, WARN, INFO, DEBUG, VERBOSE (default=ERROR)
 	 * <log level="DEBUG" />
+	 * Default of a setting the intent can override
+	 * <preference name="callbackServerNio" value="true" />
+	 *
+	 * @param activity
+	 * @param whiteList To add the access origins to
+	 * @return
 	 */
-	public static ArrayList<Pattern> loadConfiguration(Context context) {
-		ArrayList<Pattern> whiteList = new ArrayList<Pattern>();
+	static GapConfig load(Activity activity, WhiteList whiteList) {
+		HashMap<String, String> preferences = new HashMap<String, String>();
+		Bundle extras = new Bundle();
+		if (activity.getIntent().getExtras() != null) {
+			extras.putAll(activity.getIntent().getExtras());
+		}
 
-		int id = context.getResources().getIdentifier("phonegap", "xml", context.getPackageName());
+		int id = activity.getResources().getIdentifier("phonegap", "xml", activity.getPackageName());
 		if (id == 0) {
 			LOG.i("PhoneGapLog", "phonegap.xml missing. Ignoring...");
-			return whiteList;
+			return new GapConfig(preferences, extras);
 		}
-		XmlResourceParser xml = context.getResources().getXml(id);
+		XmlResourceParser xml = activity.getResources().getXml(id);
 		int eventType = -1;
 		while (eventType != XmlResourceParser.END_DOCUMENT) {
 			if (eventType == XmlResourceParser.START_TAG) {
@@ -47,6 +177,12 @@ class GapConfig {
 					if (level != null) {
 						LOG.setLogLevel(level);
 					}
+				} else if (strNode.equals("preference")) {
+					String name = xml.getAttributeValue(null, "name");
+					String value = xml.getAttributeValue(null, "value");
+					if (name != null && value != null) {
+						preferences.put(name, value);
+					}
 				}
 			}
 			try {
@@ -58,7 +194,23 @@ class GapConfig {
 			}
 		}
 
-		return whiteList;
+		return new GapConfig(preferences, extras);
+	}
+
+	/**
+	 * Get the configuration with the extras of a new intent over the ones received before.
+	 *
+	 * @param intent
+	 * @return This if the intent has no extras
+	 */
+	GapConfig withIntent(Intent intent) {
+		Bundle added = intent.getExtras();
+		if (added == null || added.isEmpty()) {
+			return this;
+		}
+		Bundle extras = new Bundle(this.extras);
+		extras.putAll(added);
+		return new GapConfig(this.preferences, extras);
 	}
 
 	/**
@@ -68,161 +220,72 @@ class GapConfig {
 	 * @param origin	 URL regular expression to allow
 	 * @param subdomains T=include all subdomains under origin
 	 */
-	public static void addWhiteListEntry(ArrayList<Pattern> whiteList, String origin, boolean subdomains) {
+	public static void addWhiteListEntry(WhiteList whiteList, String origin, boolean subdomains) {
 		try {
-			// Unlimited access to network resources
+			whiteList.add(origin, subdomains);
 			if ("*".equals(origin)) {
 				LOG.d(TAG, "Unlimited access to network resources");
-				whiteList.add(Pattern.compile(".*"));
-			} else { // specific access
-				// check if subdomains should be included
-				// TODO: we should not to add more domains if * has already been added
-				if (subdomains) {
-					// XXX making it stupid friendly for people who forget to include protocol/SSL
-					if (origin.startsWith("http")) {
-						whiteList.add(Pattern.compile(origin.replaceFirst("https?://", "^https?://.*")));
-					} else {
-						whiteList.add(Pattern.compile("^https?://.*" + origin));
-					}
-					LOG.d(TAG, "Origin to allow with subdomains: %s", origin);
-				} else {
-					// XXX making it stupid friendly for people who forget to include protocol/SSL
-					if (origin.startsWith("http")) {
-						whiteList.add(Pattern.compile(origin.replaceFirst("https?://", "^https?://")));
-					} else {
-						whiteList.add(Pattern.compile("^https?://" + origin));
-					}
-					LOG.d(TAG, "Origin to allow: %s", origin);
-				}
+			} else if (subdomains) {
+				LOG.d(TAG, "Origin to allow with subdomains: %s", origin);
+			} else {
+				LOG.d(TAG, "Origin to allow: %s", origin);
 			}
 		} catch (Exception e) {
 			LOG.d(TAG, "Failed to add origin %s", origin);
 		}
 	}
 
-
 	/**
-	 * Get boolean property for activity.
+	 * Get the extra or preference, as a String.
 	 *
 	 * @param name
-	 * @param defaultValue
-	 * @param activity
-	 * @return
+	 * @return Null if neither is set
 	 */
-	public boolean getBooleanProperty(String name, boolean defaultValue, Activity activity) {
-		Bundle bundle = activity.getIntent().getExtras();
-		if (bundle == null) {
-			return defaultValue;
-		}
-		Boolean p = (Boolean) bundle.get(name);
-		if (p == null) {
-			return defaultValue;
+	@Nullable
+	private String get(String name) {
+		Object extra = this.extras.get(name);
+		if (extra != null) {
+			return extra.toString();
 		}
-		return p.booleanValue();
+		return this.preferences.get(name);
 	}
 
-	/**
-	 * Get int property for activity.
-	 *
-	 * @param name
-	 * @param defaultValue
-	 * @param activity
-	 * @return
-	 */
-	public int getIntegerProperty(String name, int defaultValue, Activity activity) {
-		Bundle bundle = activity.getIntent().getExtras();
-		if (bundle == null) {
-			return defaultValue;
-		}
-		Integer p = (Integer) bundle.get(name);
-		if (p == null) {
-			return defaultValue;
+	@Nullable
+	private String getString(String name) {
+		Object extra = this.extras.get(name);
+		if (extra instanceof String) {
+			return (String) extra;
 		}
-		return p.intValue();
+		return this.get(name);
 	}
 
-	/**
-	 * Get string property for activity.
-	 *
-	 * @param name
-	 * @param defaultValue
-	 * @param activity
-	 * @return
-	 */
-	@Nullable
-	public static String getStringProperty(String name, @Nullable String defaultValue, Activity activity) {
-		Bundle bundle = activity.getIntent().getExtras();
-		if (bundle == null) {
-			return defaultValue;
+	private boolean getBoolean(String name, boolean defaultValue) {
+		Object extra = this.extras.get(name);
+		if (extra instanceof Boolean) {
+			return (Boolean) extra;
 		}
-		String p = bundle.getString(name);
-		if (p == null) {
+		String value = this.get(name);
+		if (value == null) {
 			return defaultValue;
 		}
-		return p;
+		return value.equalsIgnoreCase("true");
 	}
 
-	/**
-	 * Get double property for activity.
-	 *
-	 * @param name
-	 * @param defaultValue
-	 * @param activity
-	 * @return
-	 */
-	public double getDoubleProperty(String name, double defaultValue, Activity activity) {
-		Bundle bundle = activity.getIntent().getExtras();
-		if (bundle == null) {
+	private int getInteger(String name, int defaultValue) {
+		Object extra = this.extras.get(name);
+		if (extra instanceof Integer) {
+			return (Integer) extra;
+		}
+		String value = this.get(name);
+		if (value == null) {
 			return defaultValue;
 		}
-		Double p = (Double) bundle.get(name);
-		if (p == null) {
+		try {
+			// Through long, so colors such as 0xFF000000 fit
+			return (int) Long.decode(value).longValue();
+		} catch (NumberFormatException e) {
+			LOG.w(TAG, "Ignoring %s=%s, not an integer", name, value);
 			return defaultValue;
 		}
-		return p.doubleValue();
-	}
-
-	/**
-	 * Set boolean property on activity.
-	 *
-	 * @param name
-	 * @param value
-	 * @param activity
-	 */
-	public void setBooleanProperty(String name, boolean value, Activity activity) {
-		activity.getIntent().putExtra(name, value);
-	}
-
-	/**
-	 * Set int property on activity.
-	 *
-	 * @param name
-	 * @param value
-	 * @param activity
-	 */
-	public void setIntegerProperty(String name, int value, Activity activity) {
-		activity.getIntent().putExtra(name, value);
-	}
-
-	/**
-	 * Set string property on activity.
-	 *
-	 * @param name
-	 * @param value
-	 * @param activity
-	 */
-	public void setStringProperty(String name, String value, Activity activity) {
-		activity.getIntent().putExtra(name, value);
-	}
-
-	/**
-	 * Set double property on activity.
-	 *
-	 * @param name
-	 * @param value
-	 * @param activity
-	 */
-	public void setDoubleProperty(String name, double value, Activity activity) {
-		activity.getIntent().putExtra(name, value);
 	}
 }
@@ -7,10 +7,8 @@
 */
 package com.phonegap;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ScheduledFuture;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -32,23 +30,22 @@ import android.widget.Toast;
 import com.phonegap.api.IActivityEventsDispatcher;
 import com.phonegap.api.IPlugin;
 import com.phonegap.api.LOG;
+import com.phonegap.api.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 public class GapView extends WebView {
 
 	public static String TAG = "GAP_" + GapView.class.getSimpleName();
 
 	/**
-	 * XML config read helper.
+	 * Configuration from phonegap.xml and the intent, replaced on a new intent.
 	 */
-	private GapConfig config = new GapConfig();
+	private volatile GapConfig config;
 	// The webview for our app
 	WebView appView;
 	private WebViewClient webViewClient;
-	ArrayList<Pattern> whiteList = new ArrayList<Pattern>();
-	/**
-	 * White-list check URL cache.
-	 */
-	private HashMap<String, Boolean> whiteListCache = new HashMap<String, Boolean>();
+	WhiteList whiteList = new WhiteList();
 
 	/**
 	 * If overridden, when the back button is pressed, the "backKeyDown" JavaScript event will be fired.
@@ -99,13 +96,19 @@ public class GapView extends WebView {
 	private int splashscreen = 0;
 
 	// LoadUrl timeout value in msec (default of 20 sec)
-	private int loadUrlTimeoutValue = 20000;
+	private int loadUrlTimeoutValue = GapConfig.DEFAULT_LOAD_URL_TIMEOUT;
 
 	// Keep app running when pause is received. (default = true)
 	// If true, then the JavaScript and native code continue to run in the background
 	// when another application (activity) is started.
 	private boolean keepRunning = true;
 
+	// Periodic logcat dump of the bridge metrics, if metricsLogInterval is set
+	private ScheduledFuture<?> metricsLog;
+
+	// Start of the page load being traced, 0 if none
+	long tracePageLoad;
+
 	Context context;
 	private Activity activity;
 	private IActivityEventsDispatcher activityEventsDispatcher = new IActivityEventsDispatcher() {
@@ -116,7 +119,7 @@ public class GapView extends WebView {
 
 		@Override
 		public void onResume() {
-			GapView.this.onResume();
+			GapView.this.onActivityResume();
 		}
 
 		@Override
@@ -125,6 +128,7 @@ public class GapView extends WebView {
 		}
 	};
 
+	@SuppressWarnings("deprecation")
 	public GapView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 		this.context = context;
@@ -137,7 +141,13 @@ public class GapView extends WebView {
 		// Load PhoneGap configuration:
 		//      white list of allowed URLs
 		//      debug setting
-		whiteList = GapConfig.loadConfiguration(context);
+		//      activity parameters
+		this.config = GapConfig.load(activity, this.whiteList);
+
+		// If trace, write a Chrome trace of the bridge to the cache directory
+		if (this.config.trace) {
+			Tracer.start(context.getCacheDir());
+		}
 
 		this.webViewClient = new GapWebViewClient(this);
 		setWebChromeClient(new GapWebChromeClient(context, this));
@@ -177,6 +187,9 @@ public class GapView extends WebView {
 
 		// Clear cancel flag
 		this.cancelLoadUrl = false;
+
+		// Create the plugins marked onload in the background, now that the view is set up
+		this.pluginManager.warmUp();
 	}
 
 	/**
@@ -184,6 +197,7 @@ public class GapView extends WebView {
 	 * This must be called from the main UI thread.
 	 */
 	private void handleActivityParameters() {
+		GapConfig config = this.config;
 
 		// Init web view if not already done
 //		if (this.appView == null) {
@@ -191,26 +205,72 @@ public class GapView extends WebView {
 //		}
 
 		// If backgroundColor
-		this.backgroundColor = config.getIntegerProperty("backgroundColor", Color.BLACK, activity);
+		this.backgroundColor = config.backgroundColor;
 //todo		this.root.setBackgroundColor(this.backgroundColor);
 
 		// If spashscreen
-		this.splashscreen = config.getIntegerProperty("splashscreen", 0, activity);
+		this.splashscreen = config.splashscreen;
 		if (this.firstPage && (this.splashscreen != 0)) {
 //todo			root.setBackgroundResource(this.splashscreen);
 		}
 
 		// If loadInWebView
-		this.loadInWebView = config.getBooleanProperty("loadInWebView", false, activity);
+		this.loadInWebView = config.loadInWebView;
 
 		// If loadUrlTimeoutValue
-		int timeout = config.getIntegerProperty("loadUrlTimeoutValue", 0, activity);
-		if (timeout > 0) {
-			this.loadUrlTimeoutValue = timeout;
-		}
+		this.loadUrlTimeoutValue = config.loadUrlTimeoutValue;
 
 		// If keepRunning
-		this.keepRunning = config.getBooleanProperty("keepRunning", true, activity);
+		this.keepRunning = config.keepRunning;
+
+		// If callbackServerNio, use the non-blocking XHR server with persistent connections
+		this.callbackServer.setUseNio(config.callbackServerNio);
+
+		// Budget of a batch XHR callback response
+		this.callbackServer.setBatchLimits(config.callbackBatchCount, config.callbackBatchSize);
+
+		// Bounds of the list of callbacks waiting for the page, and what to do when it is full:
+		// DROP_OLDEST, DROP_NEWEST, BLOCK (for callbackBlockTimeout ms) or COALESCE
+		this.callbackServer.setQueueLimits(config.callbackQueueCount, config.callbackQueueSize);
+		this.callbackServer.setOverflowPolicy(config.callbackOverflow, config.callbackBlockTimeout);
+
+		// If callbackRecords, send plugin results as data-only records instead of statements
+		this.callbackServer.setRecords(config.callbackRecords);
+
+		// If metricsLogInterval, log the bridge metrics every that many seconds
+		int metricsLogInterval = config.metricsLogInterval;
+		if (this.metricsLog != null) {
+			this.metricsLog.cancel(false);
+			this.metricsLog = null;
+		}
+		if (metricsLogInterval > 0) {
+			this.metricsLog = this.pluginManager.schedule(new Runnable() {
+				@Override
+				public void run() {
+					GapView.this.logMetrics();
+				}
+			}, metricsLogInterval * 1000L);
+		}
+	}
+
+	/**
+	 * Get the metrics of the plugin actions and the callback lanes.
+	 *
+	 * @return {actions, executor, cache, callbacks}
+	 * @throws JSONException
+	 */
+	JSONObject getMetrics() throws JSONException {
+		JSONObject json = this.pluginManager.getMetrics();
+		json.put("callbacks", this.callbackServer.getMetrics());
+		return json;
+	}
+
+	/**
+	 * Log the metrics of the plugin actions and the callback lanes.
+	 */
+	void logMetrics() {
+		this.pluginManager.logMetrics();
+		this.callbackServer.logMetrics();
 	}
 
 	private static volatile int times;
@@ -259,20 +319,24 @@ public class GapView extends WebView {
 
 			@Override
 			public void run() {
+				long start = Tracer.begin();
 
 				// Handle activity parameters
 				me.handleActivityParameters();
+				long phase = Tracer.begin();
+				Tracer.end(start, "loadGapUrl.parameters", null, null, null);
 
 				// Initialize callback server
 				me.callbackServer.init(url);
+				Tracer.end(phase, "loadGapUrl.callbackServer", null, null, null);
 
 				// Loading dialog.
 				// If loadingDialog property, then show the App loading dialog for first page of app.
 				String loading;
 				if (me.firstPage) {
-					loading = GapConfig.getStringProperty("loadingDialog", null, activity);
+					loading = me.config.loadingDialog;
 				} else {
-					loading = GapConfig.getStringProperty("loadingPageDialog", null, activity);
+					loading = me.config.loadingPageDialog;
 				}
 				if (loading != null) {
 					String title = "";
@@ -316,7 +380,11 @@ public class GapView extends WebView {
 				};
 				Thread thread = new Thread(runnable);
 				thread.start();
+				phase = Tracer.begin();
 				me.appView.loadUrl(url);
+				me.tracePageLoad = phase;
+				Tracer.end(phase, "loadGapUrl.loadUrl", null, null, null);
+				Tracer.end(start, "loadGapUrl", null, null, null);
 			}
 		});
 	}
@@ -429,6 +497,9 @@ public class GapView extends WebView {
 	 * Called when the activity receives a new intent
 	 */
 	private void onNewIntent(Intent intent) {
+		// Take the extras of the intent, used from the next page load on
+		this.config = this.config.withIntent(intent);
+
 		//Forward to plugins
 		this.pluginManager.onNewIntent(intent);
 	}
@@ -436,7 +507,7 @@ public class GapView extends WebView {
 	/**
 	 * activity onResume.
 	 */
-	private void onResume() {
+	private void onActivityResume() {
 		// Send resume event to JavaScript
 		this.appView.loadUrl("javascript:try{PhoneGap.onResume.fire();}catch(e){};");
 
@@ -471,6 +542,7 @@ public class GapView extends WebView {
 //		// Forward to plugins
 //		this.pluginManager.onDestroy();
 //
+		Tracer.stop();
 		super.onDetachedFromWindow();
 	}
 
@@ -484,16 +556,95 @@ public class GapView extends WebView {
 		this.pluginManager.addService(serviceType, className);
 	}
 
+	/**
+	 * Drop the cached results of a plugin action.
+	 *
+	 * @param plugin
+	 * @param action The action, or null for all actions of the plugin
+	 */
+	public void invalidateCachedResults(IPlugin plugin, String action) {
+		this.pluginManager.invalidateCache(plugin.getClass().getName(), action);
+	}
+
 	/**
 	 * Send JavaScript statement back to JavaScript.
 	 * (This is a convenience method)
 	 *
 	 * @param statement
 	 */
-	public void sendJavascript(String statement) {
+	public void sendJavascript(CharSequence statement) {
 		this.callbackServer.sendJavascript(statement);
 	}
 
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendJavascript(CharSequence)
+	 */
+	public void sendJavascript(String statement) {
+		this.callbackServer.sendJavascript((CharSequence) statement);
+	}
+
+	/**
+	 * Send JavaScript statement back to JavaScript, replacing the not yet sent statement with the same key.
+	 *
+	 * @param statement
+	 * @param coalesceKey Key of the value the statement updates, or null to always send
+	 */
+	public void sendJavascript(CharSequence statement, String coalesceKey) {
+		this.callbackServer.sendJavascript(statement, coalesceKey);
+	}
+
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendJavascript(CharSequence, String)
+	 */
+	public void sendJavascript(String statement, String coalesceKey) {
+		this.callbackServer.sendJavascript((CharSequence) statement, coalesceKey);
+	}
+
+	/**
+	 * Send the result of a plugin action to its JavaScript callback.
+	 *
+	 * @param result
+	 * @param callbackId
+	 * @param success     T=call the success callback, F=the error callback
+	 * @param coalesceKey Key of the value the result updates, or null to always send
+	 */
+	public void sendResult(PluginResult result, String callbackId, boolean success, String coalesceKey) {
+		this.callbackServer.sendResult(result, callbackId, success, coalesceKey);
+	}
+
+	/**
+	 * Send the latency critical result of a plugin action to its JavaScript callback, ahead of the others.
+	 *
+	 * @param result
+	 * @param callbackId
+	 * @param success    T=call the success callback, F=the error callback
+	 */
+	public void sendInteractiveResult(PluginResult result, String callbackId, boolean success) {
+		this.callbackServer.sendInteractiveResult(result, callbackId, success);
+	}
+
+	/**
+	 * Send latency critical JavaScript statement back to JavaScript, ahead of the others.
+	 *
+	 * @param statement
+	 */
+	public void sendInteractiveJavascript(CharSequence statement) {
+		this.callbackServer.sendInteractiveJavascript(statement);
+	}
+
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendInteractiveJavascript(CharSequence)
+	 */
+	public void sendInteractiveJavascript(String statement) {
+		this.callbackServer.sendInteractiveJavascript((CharSequence) statement);
+	}
+
 	/**
 	 * Display a new browser with the specified URL.
 	 * <p/>
@@ -720,7 +871,7 @@ public class GapView extends WebView {
 	public void onReceivedError(int errorCode, String description, String failingUrl) {
 
 		// If errorUrl specified, then load it
-		final String errorUrl = GapConfig.getStringProperty("errorUrl", null, activity);
+		final String errorUrl = this.config.errorUrl;
 		if ((errorUrl != null) && (errorUrl.startsWith("file://") || errorUrl.indexOf(this.baseUrl) == 0 || isUrlWhiteListed(errorUrl)) && (!failingUrl.equals(errorUrl))) {
 
 			// Load URL on UI thread
@@ -779,23 +930,7 @@ public class GapView extends WebView {
 	 * @return
 	 */
 	boolean isUrlWhiteListed(String url) {
-
-		// Check to see if we have matched url previously
-		if (whiteListCache.containsKey(url)) {
-			return true;
-		}
-
-		// Look for match in white list
-		for (Pattern p : whiteList) {
-			Matcher m = p.matcher(url);
-
-			// If match found, then cache it to speed up subsequent comparisons
-			if (m.find()) {
-				whiteListCache.put(url, true);
-				return true;
-			}
-		}
-		return false;
+		return this.whiteList.isAllowed(url);
 	}
 
 	public IActivityEventsDispatcher getActivityEventsDispatcher() {
@@ -168,18 +168,37 @@ class GapWebChromeClient extends WebChromeClient {
 		if (reqOk && defaultValue != null && defaultValue.length() > 3 && defaultValue.substring(0, 4).equals("gap:")) {
 			JSONArray array;
 			try {
+				long start = Tracer.begin();
 				array = new JSONArray(defaultValue.substring(4));
 				String service = array.getString(0);
 				String action = array.getString(1);
 				String callbackId = array.getString(2);
 				boolean async = array.getBoolean(3);
+				Tracer.end(start, "parsePrompt", service, action, callbackId);
 				String r = this.gapView.pluginManager.exec(service, action, callbackId, message, async);
 				result.confirm(r);
+				Tracer.end(start, "onJsPrompt", service, action, callbackId);
 			} catch (JSONException e) {
 				e.printStackTrace();
 			}
 		}
 
+		// Calling PluginManager.execBatch() to run several native services in one call using
+		// prompt("[[service, action, callbackId, args], ...]", "gap_batch:");
+		else if (reqOk && defaultValue != null && defaultValue.equals("gap_batch:")) {
+			long start = Tracer.begin();
+			String r = this.gapView.pluginManager.execBatch(message);
+			result.confirm(r);
+			Tracer.end(start, "onJsPrompt", null, "batch", null);
+		}
+
+		// Cancelling an async PluginManager.exec() call using
+		// prompt(callbackId, "gap_cancel:");
+		else if (reqOk && defaultValue != null && defaultValue.equals("gap_cancel:")) {
+			String r = Boolean.toString(this.gapView.pluginManager.cancel(message));
+			result.confirm(r);
+		}
+
 		// Polling for JavaScript messages
 		else if (reqOk && defaultValue != null && defaultValue.equals("gap_poll:")) {
 			String r = this.gapView.callbackServer.getJavascript();
@@ -4,6 +4,7 @@ import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.net.http.SslError;
 import android.util.Log;
@@ -155,6 +156,22 @@ public class GapWebViewClient extends WebViewClient {
 		return true;
 	}
 
+	/**
+	 * Notify the host application that a page has started loading.
+	 *
+	 * @param view	The webview initiating the callback.
+	 * @param url	 The url of the page.
+	 * @param favicon The favicon of the page, if any.
+	 */
+	@Override
+	public void onPageStarted(WebView view, String url, Bitmap favicon) {
+		Log.v(TAG, "onPageStarted URL: " + url);
+		super.onPageStarted(view, url, favicon);
+
+		// The previous page is gone, so is anyone waiting for the results of its async calls
+		this.view.pluginManager.cancelAll();
+	}
+
 	/**
 	 * Notify the host application that a page has finished loading.
 	 *
@@ -169,6 +186,10 @@ public class GapWebViewClient extends WebViewClient {
 		// Clear timeout flag
 		this.view.loadUrlTimeout++;
 
+		// End the trace span of the page load started by GapView.loadGapUrl()
+		Tracer.end(this.view.tracePageLoad, "loadGapUrl.pageLoad", null, null, null);
+		this.view.tracePageLoad = 0;
+
 		// Try firing the onNativeReady event in JS. If it fails because the JS is
 		// not loaded yet then just set a flag so that the onNativeReady can be fired
 		// from the JS side when the JS gets to that code.
@@ -0,0 +1,132 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative values, such as latencies in microseconds or sizes in chars.
+ * <p/>
+ * Values are counted in log-linear buckets: 16 per power of two, so a percentile is within 1/16 of
+ * the recorded value. Values above 2^32 - 1 are counted as that. Recording is lock-free and doesn't
+ * allocate, any number of threads may record at once. A percentile read while values are recorded
+ * may miss the latest ones.
+ */
+final class Histogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int MAX_BITS = 32;
+	private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_BITS - SUB_BITS + 1) * SUB);
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value.
+	 *
+	 * @param value Negative values are counted as 0
+	 */
+	void record(long value) {
+		if (value < 0) {
+			value = 0;
+		} else if (value > MAX_VALUE) {
+			value = MAX_VALUE;
+		}
+		this.counts.incrementAndGet(index(value));
+		this.sum.addAndGet(value);
+		long current;
+		while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+			// retry
+		}
+	}
+
+	/**
+	 * Record the time since a System.nanoTime(), in microseconds.
+	 *
+	 * @param start
+	 */
+	void recordSince(long start) {
+		this.record((System.nanoTime() - start) / 1000);
+	}
+
+	/**
+	 * Get count, mean, max and percentiles.
+	 *
+	 * @return
+	 */
+	JSONObject toJSON() {
+		long[] snapshot = new long[this.counts.length()];
+		long count = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = this.counts.get(i);
+			count += snapshot[i];
+		}
+		long max = this.max.get();
+		JSONObject json = new JSONObject();
+		try {
+			json.put("count", count);
+			json.put("mean", count > 0 ? this.sum.get() / count : 0);
+			json.put("p50", percentile(snapshot, count, 0.5, max));
+			json.put("p90", percentile(snapshot, count, 0.9, max));
+			json.put("p99", percentile(snapshot, count, 0.99, max));
+			json.put("p999", percentile(snapshot, count, 0.999, max));
+			json.put("max", max);
+		} catch (JSONException e) {
+			// Only thrown for non-finite numbers
+			throw new IllegalStateException(e);
+		}
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		JSONObject json = this.toJSON();
+		return String.format("n=%d p50=%d p99=%d p999=%d max=%d", json.optLong("count"), json.optLong("p50"),
+				json.optLong("p99"), json.optLong("p999"), json.optLong("max"));
+	}
+
+	private static long percentile(long[] counts, long count, double p, long max) {
+		if (count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(p * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(highest(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Values below 2 * SUB have a bucket each, above that 2^shift values share one.
+	 */
+	private static int index(long value) {
+		if (value < 2 * SUB) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return shift * SUB + (int) (value >>> shift);
+	}
+
+	private static long highest(int index) {
+		if (index < 2 * SUB) {
+			return index;
+		}
+		int shift = index / SUB - 1;
+		return ((long) (index - shift * SUB + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Call counts and latency histograms of each plugin action, recorded by {@link PluginManager} and
+ * {@link CallbackQueue}. Times are in microseconds, payloads in chars:
+ * <p/>
+ * dispatch - from the call coming in from JavaScript until the plugin runs, argument parsing and
+ * the wait for a pool thread included
+ * execute - the plugin running the action
+ * delivery - a callback the action sent waiting in the callback list until a response takes it
+ * payload - the size of the result returned to a sync call or of a callback sent
+ * dropped - callbacks the action sent that were shed from a full callback list, not delivered
+ * <p/>
+ * Callbacks a plugin sends while it runs an action, on the thread that runs it, count for that
+ * action. Callbacks sent later, from a listener for example, only count for the callback lane.
+ * <p/>
+ * Recording is lock-free and, once an action has been seen, doesn't allocate. The number of actions
+ * is bounded, further ones are counted together as "other".
+ */
+final class Metrics {
+
+	static final int MAX_ACTIONS = 256;
+
+	/**
+	 * Metrics of one action of a service.
+	 */
+	static final class Action {
+		final String service;
+		final String action;
+		final String name;
+		final AtomicLong calls = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong cacheHits = new AtomicLong();
+		final AtomicLong dropped = new AtomicLong();
+		final Histogram dispatch = new Histogram();
+		final Histogram execute = new Histogram();
+		final Histogram delivery = new Histogram();
+		final Histogram payload = new Histogram();
+
+		/**
+		 * @param service
+		 * @param action  Null for the actions counted together
+		 */
+		Action(String service, String action) {
+			this.service = service;
+			this.action = action;
+			this.name = action != null ? service + "." + action : service;
+		}
+
+		JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("calls", this.calls.get());
+			json.put("errors", this.errors.get());
+			json.put("cacheHits", this.cacheHits.get());
+			json.put("dropped", this.dropped.get());
+			json.put("dispatch", this.dispatch.toJSON());
+			json.put("execute", this.execute.toJSON());
+			json.put("delivery", this.delivery.toJSON());
+			json.put("payload", this.payload.toJSON());
+			return json;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("calls=%d errors=%d cacheHits=%d dropped=%d dispatch[%s] execute[%s] delivery[%s] payload[%s]",
+					this.calls.get(), this.errors.get(), this.cacheHits.get(), this.dropped.get(), this.dispatch,
+					this.execute, this.delivery, this.payload);
+		}
+	}
+
+	/**
+	 * Action run by the plugin code on this thread, see {@link #enter(Action)}.
+	 */
+	private static final ThreadLocal<Action> CURRENT = new ThreadLocal<Action>();
+
+	/**
+	 * Actions by service, then by action name, so a lookup doesn't build a key.
+	 */
+	private final ConcurrentHashMap<String, ConcurrentHashMap<String, Action>> services =
+			new ConcurrentHashMap<String, ConcurrentHashMap<String, Action>>();
+	private final AtomicInteger count = new AtomicInteger();
+	private final Action other = new Action("other", null);
+
+	/**
+	 * Mark the plugin code on this thread as running an action, until {@link #exit(Action)}.
+	 *
+	 * @param action
+	 * @return The action that was running before, to pass to exit
+	 */
+	static Action enter(Action action) {
+		Action previous = CURRENT.get();
+		CURRENT.set(action);
+		return previous;
+	}
+
+	/**
+	 * @param previous What {@link #enter(Action)} returned
+	 */
+	static void exit(Action previous) {
+		CURRENT.set(previous);
+	}
+
+	/**
+	 * Get the action the plugin code on this thread runs.
+	 *
+	 * @return The action or null
+	 */
+	static Action current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Get the metrics of an action, created on first use.
+	 *
+	 * @param service
+	 * @param action
+	 * @return
+	 */
+	Action of(String service, String action) {
+		ConcurrentHashMap<String, Action> actions = this.services.get(service);
+		if (actions == null) {
+			ConcurrentHashMap<String, Action> created = new ConcurrentHashMap<String, Action>();
+			actions = this.services.putIfAbsent(service, created);
+			if (actions == null) {
+				actions = created;
+			}
+		}
+		Action metrics = actions.get(action);
+		if (metrics == null) {
+			if (this.count.incrementAndGet() > MAX_ACTIONS) {
+				this.count.decrementAndGet();
+				return this.other;
+			}
+			Action created = new Action(service, action);
+			metrics = actions.putIfAbsent(action, created);
+			if (metrics == null) {
+				metrics = created;
+			} else {
+				this.count.decrementAndGet();
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Get the metrics of every action that has been called, by "service.action".
+	 *
+	 * @return
+	 * @throws JSONException
+	 */
+	JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		for (Map<String, Action> actions : this.services.values()) {
+			for (Action action : actions.values()) {
+				json.put(action.name, action.toJSON());
+			}
+		}
+		if (this.other.calls.get() > 0) {
+			json.put(this.other.name, this.other.toJSON());
+		}
+		return json;
+	}
+
+	/**
+	 * Get one line per action that has been called.
+	 *
+	 * @return
+	 */
+	@Override
+	public String toString() {
+		StringBuilder lines = new StringBuilder();
+		for (Map<String, Action> actions : this.services.values()) {
+			for (Action action : actions.values()) {
+				lines.append(action.name).append(": ").append(action).append('\n');
+			}
+		}
+		if (this.other.calls.get() > 0) {
+			lines.append(this.other.name).append(": ").append(this.other).append('\n');
+		}
+		return lines.toString();
+	}
+}
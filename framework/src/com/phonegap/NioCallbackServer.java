@@ -0,0 +1,628 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Non-blocking transport of {@link CallbackServer}, used when the callbackServerNio activity extra is set.
+ * <p/>
+ * One selector thread serves every connection. Connections are HTTP/1.1 persistent, so the WebView
+ * keeps reusing the same socket for its long-poll XHRs instead of opening one per callback.
+ * Any number of long-polls may be pending at once; they are answered in arrival order as soon as
+ * JavaScript statements are queued, or with a 404 after {@link #POLL_TIMEOUT} ms.
+ * <p/>
+ * There is at most one stream (see {@link CallbackServer}); a new stream request ends the previous one.
+ * While a stream is open it gets every statement before any pending long-poll, one batch budget at a
+ * time and only once the previous ones have been written. Probes are held open without data until the
+ * client closes them or {@link CallbackServer#STREAM_PROBE_TIMEOUT} ms have passed.
+ * <p/>
+ * Requests and responses go through direct buffers: one shared read buffer, and one write buffer per
+ * connection that is kept for the lifetime of the connection and grown when a response needs more room.
+ * Responses are encoded into two shared {@link ResponseBuffer}s, head and body, and copied from there.
+ */
+class NioCallbackServer implements Runnable {
+
+	private static final String TAG = "GAP_" + NioCallbackServer.class.getSimpleName();
+
+	/**
+	 * Time in ms a long-poll is held open before an empty 404 response is sent.
+	 */
+	static final long POLL_TIMEOUT = 10000;
+
+	/**
+	 * Max size of request headers.
+	 */
+	private static final int MAX_REQUEST = 8 * 1024;
+
+	/**
+	 * State of one client connection.
+	 */
+	private static final class Connection {
+		final SocketChannel channel;
+		final StringBuilder request = new StringBuilder(128);
+		ByteBuffer out;
+		boolean keepAlive;
+		boolean batch;
+		boolean parked;
+		boolean stream;
+		boolean probe;
+		int streamed;
+		long deadline;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	private final CallbackServer server;
+	private volatile Selector selector;
+
+	/**
+	 * Long-polls waiting for data, oldest first. Selector thread only.
+	 */
+	private final LinkedList<Connection> pending = new LinkedList<Connection>();
+
+	/**
+	 * The open stream, if any. Selector thread only.
+	 */
+	private Connection stream;
+
+	/**
+	 * Probes held open, oldest first. Selector thread only.
+	 */
+	private final LinkedList<Connection> probes = new LinkedList<Connection>();
+
+	/**
+	 * Indicates that long-polls are pending or the stream can take data, so adding a statement has to
+	 * wake up the selector.
+	 */
+	private volatile boolean polling;
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(1024);
+
+	/**
+	 * Response head and body being built. Selector thread only.
+	 */
+	private final ResponseBuffer head = new ResponseBuffer(128);
+	private final ResponseBuffer body = new ResponseBuffer(1024);
+
+	NioCallbackServer(CallbackServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * Wake up the selector if a long-poll is waiting for data. Called after a statement is added.
+	 */
+	void wakeUp() {
+		if (this.polling) {
+			this.wakeUpNow();
+		}
+	}
+
+	/**
+	 * Wake up the selector unconditionally, used when the server stops.
+	 */
+	void wakeUpNow() {
+		Selector s = this.selector;
+		if (s != null) {
+			s.wakeup();
+		}
+	}
+
+	@Override
+	public void run() {
+		ServerSocketChannel serverChannel = null;
+		try {
+			this.selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.configureBlocking(false);
+			serverChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+			serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+			this.server.started(serverChannel.socket().getLocalPort());
+
+			while (this.server.isActive()) {
+
+				// Publish that polls are pending before looking at the list,
+				// so a statement added meanwhile either is seen here or wakes up the selector.
+				// A stream that has not written its last chunks waits for OP_WRITE instead.
+				if (this.stream != null) {
+					this.polling = isWritten(this.stream);
+				} else {
+					this.polling = !this.pending.isEmpty();
+				}
+				if (this.polling && this.server.hasJavascript()) {
+					if (this.stream != null) {
+						this.feedStream();
+					} else {
+						this.answerPending();
+					}
+					continue;
+				}
+
+				long timeout = this.expirePending();
+				this.selector.select(timeout);
+
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							this.accept(serverChannel);
+						} else if (key.isReadable()) {
+							this.read(key);
+						} else if (key.isWritable()) {
+							this.write(key);
+						}
+					} catch (IOException e) {
+						Log.d(TAG, "Connection failed: " + e);
+						this.close(key);
+					} catch (RuntimeException e) {
+						// Don't let one connection take the selector thread down
+						Log.e(TAG, "Connection failed", e);
+						this.close(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "IO", e);
+		} finally {
+			this.shutdown(serverChannel);
+		}
+		Log.d(TAG, "NioCallbackServer.run() - EXIT");
+	}
+
+	private void accept(ServerSocketChannel serverChannel) throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		channel.register(this.selector, SelectionKey.OP_READ, new Connection(channel));
+	}
+
+	private void read(SelectionKey key) throws IOException {
+		Connection c = (Connection) key.attachment();
+		this.readBuffer.clear();
+		int n = c.channel.read(this.readBuffer);
+		if (n < 0) {
+			this.close(key);
+			return;
+		}
+		if (c.stream || c.probe) {
+			// Nothing more is expected from a streaming client, the read only detects that it went away
+			return;
+		}
+		this.readBuffer.flip();
+		while (this.readBuffer.hasRemaining()) {
+			c.request.append((char) (this.readBuffer.get() & 0xff));
+		}
+		this.handleRequests(key, c);
+	}
+
+	/**
+	 * Handle the complete requests read on the connection, in order. Stops at a request that is
+	 * held open; the ones pipelined behind it stay buffered until it is answered.
+	 */
+	private void handleRequests(SelectionKey key, Connection c) throws IOException {
+		while (key.isValid() && !c.parked && !c.stream && !c.probe) {
+			int end = c.request.indexOf("\r\n\r\n");
+			if (end < 0) {
+				if (c.request.length() > MAX_REQUEST) {
+					this.fail(key, "400 Bad Request");
+				}
+				return;
+			}
+			String headers = c.request.substring(0, end);
+			c.request.delete(0, end + 4);
+			this.handle(key, c, headers);
+			if (!c.keepAlive) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Check that the client of a held request is still there, without waiting.
+	 * Anything it sent meanwhile is kept for after the answer.
+	 *
+	 * @return F=the connection is closed
+	 */
+	private boolean isOpen(SelectionKey key, Connection c) {
+		if (key == null || !key.isValid()) {
+			return false;
+		}
+		try {
+			this.readBuffer.clear();
+			if (c.channel.read(this.readBuffer) < 0) {
+				this.close(key);
+				return false;
+			}
+			this.readBuffer.flip();
+			while (this.readBuffer.hasRemaining()) {
+				c.request.append((char) (this.readBuffer.get() & 0xff));
+			}
+			return true;
+		} catch (IOException e) {
+			Log.d(TAG, "Connection failed: " + e);
+			this.close(key);
+			return false;
+		}
+	}
+
+	/**
+	 * Handle a complete request, see {@link CallbackServer#run()} for the protocol.
+	 */
+	private void handle(SelectionKey key, Connection c, String headers) throws IOException {
+		int eol = headers.indexOf("\r\n");
+		String request = eol < 0 ? headers : headers.substring(0, eol);
+		String[] requestParts = request.split(" ");
+		c.keepAlive = (requestParts.length == 3) && requestParts[2].equals("HTTP/1.1")
+				&& !headers.toLowerCase().contains("connection: close");
+
+		if (!this.server.isActive()) {
+			this.fail(key, "503 Service Unavailable");
+		} else if ((requestParts.length != 3) || !requestParts[0].equals("GET")) {
+			this.fail(key, "400 Bad Request");
+		} else {
+			String path = requestParts[1].substring(1);
+			String query = "";
+			int q = path.indexOf('?');
+			if (q >= 0) {
+				query = path.substring(q + 1);
+				path = path.substring(0, q);
+			}
+			c.batch = query.equals("batch");
+
+			// Must have security token
+			if (!path.equals(this.server.getToken())) {
+				this.fail(key, "403 Forbidden");
+			} else if (query.equals("probe")) {
+				this.openProbe(key, c);
+			} else if (query.equals("stream")) {
+				this.openStream(key, c);
+			} else if (this.pending.isEmpty() && this.server.hasJavascript()) {
+				this.body.reset();
+				this.server.drainJavascript(this.body, c.batch);
+				this.respond(key, "200 OK", c.keepAlive);
+			} else {
+				// Hold the request until there is data or it times out. The connection stays
+				// registered for reads, so a client that goes away meanwhile is seen.
+				c.parked = true;
+				c.deadline = System.currentTimeMillis() + POLL_TIMEOUT;
+				this.pending.add(c);
+			}
+		}
+	}
+
+	/**
+	 * Start a chunked stream on the connection, ending the previous stream if any.
+	 */
+	private void openStream(SelectionKey key, Connection c) throws IOException {
+		if (this.stream != null) {
+			this.endStream();
+		}
+		Log.d(TAG, "Streaming");
+		c.stream = true;
+		c.streamed = 0;
+		c.deadline = System.currentTimeMillis() + POLL_TIMEOUT;
+		this.stream = c;
+		this.body.reset();
+		this.body.append(CallbackServer.STREAM_HEADERS).append(CallbackServer.STREAM_PING);
+		this.send(key, this.body, null);
+	}
+
+	/**
+	 * Answer a probe with the stream headers and the first empty frame, and hold it open.
+	 */
+	private void openProbe(SelectionKey key, Connection c) throws IOException {
+		c.probe = true;
+		c.deadline = System.currentTimeMillis() + CallbackServer.STREAM_PROBE_TIMEOUT;
+		this.probes.add(c);
+		this.body.reset();
+		this.body.append(CallbackServer.STREAM_HEADERS).append(CallbackServer.STREAM_PING);
+		this.send(key, this.body, null);
+	}
+
+	/**
+	 * End a probe, the connection is closed once the last chunk is written.
+	 */
+	private void endProbe(Connection c) throws IOException {
+		this.probes.remove(c);
+		c.probe = false;
+		c.keepAlive = false;
+		this.body.reset();
+		this.body.append(CallbackServer.STREAM_END);
+		this.send(c.channel.keyFor(this.selector), this.body, null);
+	}
+
+	/**
+	 * Write the queued statements to the stream, one chunk each, up to the batch budget.
+	 * Only called once everything sent before has been written.
+	 */
+	private void feedStream() {
+		Connection c = this.stream;
+		SelectionKey key = c.channel.keyFor(this.selector);
+		try {
+			this.body.reset();
+			int limit = Math.min(CallbackServer.STREAM_LIMIT - c.streamed, this.server.getBatchSize());
+			c.streamed += this.server.drainFrames(this.body, limit);
+			c.deadline = System.currentTimeMillis() + POLL_TIMEOUT;
+			this.send(key, this.body, null);
+			if (c.streamed >= CallbackServer.STREAM_LIMIT) {
+				this.endStream();
+			}
+		} catch (IOException e) {
+			Log.d(TAG, "Stream closed: " + e);
+			this.close(key);
+		}
+	}
+
+	/**
+	 * End the stream, the connection is closed once the last chunk is written.
+	 */
+	private void endStream() throws IOException {
+		Connection c = this.stream;
+		this.stream = null;
+		c.stream = false;
+		c.keepAlive = false;
+		this.body.reset();
+		this.body.append(CallbackServer.STREAM_END);
+		this.send(c.channel.keyFor(this.selector), this.body, null);
+	}
+
+	/**
+	 * Answer pending long-polls, oldest first, while there are statements to send.
+	 * Clients that went away are dropped before statements are taken for them.
+	 */
+	private void answerPending() {
+		while (!this.pending.isEmpty() && this.server.hasJavascript()) {
+			Connection c = this.pending.removeFirst();
+			c.parked = false;
+			SelectionKey key = c.channel.keyFor(this.selector);
+			if (!this.isOpen(key, c)) {
+				continue;
+			}
+			try {
+				this.body.reset();
+				this.server.drainJavascript(this.body, c.batch);
+				this.respond(key, "200 OK", c.keepAlive);
+				this.handleRequests(key, c);
+			} catch (IOException e) {
+				Log.d(TAG, "Connection failed: " + e);
+				this.close(key);
+			}
+		}
+	}
+
+	/**
+	 * Send 404 to long-polls that waited too long, a ping to an idle stream, so that the client XHR
+	 * does not time out, and end probes the client did not close.
+	 *
+	 * @return Time in ms to the next deadline, 0 if none is pending
+	 */
+	private long expirePending() {
+		long now = System.currentTimeMillis();
+		long next = 0;
+		Connection c = this.stream;
+		if (c != null) {
+			if (c.deadline <= now) {
+				// A stream still writing is not idle
+				if (isWritten(c)) {
+					SelectionKey key = c.channel.keyFor(this.selector);
+					try {
+						this.body.reset();
+						this.body.append(CallbackServer.STREAM_PING);
+						this.send(key, this.body, null);
+					} catch (IOException e) {
+						this.close(key);
+					}
+				}
+				c.deadline = now + POLL_TIMEOUT;
+			}
+			next = c.deadline - now;
+		}
+		while (!this.probes.isEmpty() && this.probes.getFirst().deadline <= now) {
+			c = this.probes.getFirst();
+			try {
+				this.endProbe(c);
+			} catch (IOException e) {
+				this.close(c.channel.keyFor(this.selector));
+			}
+		}
+		if (!this.probes.isEmpty() && (next == 0 || this.probes.getFirst().deadline - now < next)) {
+			next = this.probes.getFirst().deadline - now;
+		}
+		// Polls are parked in arrival order with the same timeout, so the expired ones come first
+		while (!this.pending.isEmpty() && this.pending.getFirst().deadline <= now) {
+			c = this.pending.removeFirst();
+			c.parked = false;
+			SelectionKey key = c.channel.keyFor(this.selector);
+			try {
+				this.body.reset();
+				this.respond(key, "404 NO DATA", c.keepAlive);
+				this.handleRequests(key, c);
+			} catch (IOException e) {
+				this.close(key);
+			}
+		}
+		if (!this.pending.isEmpty() && (next == 0 || this.pending.getFirst().deadline - now < next)) {
+			next = this.pending.getFirst().deadline - now;
+		}
+		return next;
+	}
+
+	/**
+	 * Queue a response with an empty body and close semantics on the connection.
+	 *
+	 * @param key	Key of the connection
+	 * @param status Status code and reason
+	 */
+	private void fail(SelectionKey key, String status) throws IOException {
+		this.body.reset();
+		this.respond(key, status, false);
+	}
+
+	/**
+	 * Queue a response with the content of {@link #body} on the connection and try to write it right away.
+	 *
+	 * @param key	   Key of the connection
+	 * @param status	Status code and reason
+	 * @param keepAlive T=keep the connection open for the next request
+	 */
+	private void respond(SelectionKey key, String status, boolean keepAlive) throws IOException {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		Connection c = (Connection) key.attachment();
+		c.keepAlive = keepAlive;
+		if (this.body.length() == 0) {
+			// need to send content otherwise some Android devices fail, so send space
+			this.body.append(' ');
+		}
+		this.head.reset();
+		this.head.append("HTTP/1.1 ").append(status).append("\r\nContent-Length: ").appendDecimal(this.body.length())
+				.append(keepAlive ? "\r\n\r\n" : "\r\nConnection: close\r\n\r\n");
+		this.send(key, this.head, this.body);
+	}
+
+	/**
+	 * Append data to the output of the connection, behind anything not written yet, and try to write it.
+	 *
+	 * @param key	Key of the connection
+	 * @param first  Data to send
+	 * @param second More data to send, or null
+	 */
+	private void send(SelectionKey key, ResponseBuffer first, ResponseBuffer second) throws IOException {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		Connection c = (Connection) key.attachment();
+		int size = (c.out != null ? c.out.remaining() : 0) + first.length() + (second != null ? second.length() : 0);
+		if (c.out == null || c.out.capacity() < size) {
+			int capacity = 512;
+			while (capacity < size) {
+				capacity <<= 1;
+			}
+			ByteBuffer out = ByteBuffer.allocateDirect(capacity);
+			if (c.out != null) {
+				out.put(c.out);
+			}
+			c.out = out;
+		} else {
+			c.out.compact();
+		}
+		first.writeTo(c.out);
+		if (second != null) {
+			second.writeTo(c.out);
+		}
+		c.out.flip();
+		this.write(key);
+	}
+
+	private void write(SelectionKey key) throws IOException {
+		Connection c = (Connection) key.attachment();
+		long start = Tracer.begin();
+		int written = c.channel.write(c.out);
+		if (start != 0) {
+			Tracer.span("write", start, System.nanoTime(), null, null, null, written);
+		}
+		if (c.out.hasRemaining()) {
+			key.interestOps(SelectionKey.OP_WRITE);
+		} else if (c.keepAlive || c.parked || c.stream || c.probe) {
+			key.interestOps(SelectionKey.OP_READ);
+		} else {
+			this.close(key);
+		}
+	}
+
+	/**
+	 * Check if everything sent on the connection has been written.
+	 */
+	private static boolean isWritten(Connection c) {
+		return c.out == null || !c.out.hasRemaining();
+	}
+
+	private void close(SelectionKey key) {
+		if (key == null) {
+			return;
+		}
+		Connection c = (Connection) key.attachment();
+		key.cancel();
+		if (c != null) {
+			this.pending.remove(c);
+			this.probes.remove(c);
+			if (this.stream == c) {
+				this.stream = null;
+			}
+			try {
+				c.channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Tell pending long-polls that the server is going away and release all channels.
+	 */
+	private void shutdown(ServerSocketChannel serverChannel) {
+		this.polling = false;
+		if (this.stream != null) {
+			try {
+				this.endStream();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		for (Connection c : new ArrayList<Connection>(this.pending)) {
+			SelectionKey key = c.channel.keyFor(this.selector);
+			try {
+				this.fail(key, "503 Service Unavailable");
+			} catch (IOException e) {
+				// ignore
+			}
+			this.close(key);
+		}
+		this.pending.clear();
+		this.probes.clear();
+		try {
+			if (this.selector != null) {
+				for (SelectionKey key : this.selector.keys()) {
+					if (key.attachment() instanceof Connection) {
+						this.close(key);
+					}
+				}
+				this.selector.close();
+			}
+			if (serverChannel != null) {
+				serverChannel.close();
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "IO", e);
+		}
+		this.server.stopped(this);
+	}
+}
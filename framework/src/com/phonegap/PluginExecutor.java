@@ -0,0 +1,500 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import android.util.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of named threads async plugin actions run on, instead of a new thread per action.
+ * <p/>
+ * Configured by the executor element of res/xml/plugins.xml, all attributes are optional:
+ * <executor core="4" max="16" queue="32" keepAlive="30" rejection="abort" />
+ * Actions are queued once core threads are busy, more threads up to max are started once the queue
+ * is full. What happens to an action when the queue is full and max threads are busy is up to the
+ * rejection policy:
+ * abort - the action fails with an error callback
+ * discardOldest - the oldest queued action fails with an error callback, the new one is queued
+ * callerRuns - the action runs on the calling thread, which is the UI thread for actions from JS
+ * <p/>
+ * A service declared serial (see {@link #setSerial(String)}) runs one action at a time, in the order
+ * they were added, on whatever pool thread is free. Its plugin can keep mutable state without locks,
+ * while different services still run in parallel. The serial order covers async actions only,
+ * sync actions run on the calling thread as before.
+ * <p/>
+ * The time each action waited in the queue and ran is recorded per service, see {@link #getStats()}.
+ * <p/>
+ * An action can be cancelled with {@link Task#cancel()}: a queued action won't run, a running one
+ * has its thread interrupted. An action given a timeout is cancelled that way once the time is up.
+ */
+final class PluginExecutor {
+
+	private static final String TAG = "GAP_" + PluginExecutor.class.getSimpleName();
+
+	static final int DEFAULT_CORE_SIZE = 4;
+	static final int DEFAULT_MAX_SIZE = 16;
+	static final int DEFAULT_QUEUE_SIZE = 32;
+	static final int DEFAULT_KEEP_ALIVE = 30;
+
+	/**
+	 * Action run on the pool.
+	 */
+	abstract static class Task implements Runnable {
+		final String service;
+
+		private final FutureTask<Void> future = new FutureTask<Void>(new Callable<Void>() {
+			@Override
+			public Void call() {
+				try {
+					Task.this.execute();
+				} catch (RuntimeException e) {
+					Log.e(TAG, "Action of " + Task.this.service + " failed", e);
+					throw e;
+				}
+				return null;
+			}
+		});
+
+		/**
+		 * @param service Name of the service the action belongs to, used for the statistics
+		 */
+		Task(String service) {
+			this.service = service;
+		}
+
+		/**
+		 * Run the action.
+		 */
+		abstract void execute();
+
+		/**
+		 * Called instead of {@link #execute()} when the pool has no room for the action.
+		 */
+		abstract void rejected();
+
+		/**
+		 * Called after the action has been cancelled because it ran past its timeout.
+		 */
+		void timedOut() {
+		}
+
+		/**
+		 * Cancel the action. It won't run if it hasn't started yet, otherwise its thread is interrupted.
+		 *
+		 * @return T=cancelled, F=already finished or cancelled
+		 */
+		boolean cancel() {
+			return this.future.cancel(true);
+		}
+
+		boolean isCancelled() {
+			return this.future.isCancelled();
+		}
+
+		@Override
+		public final void run() {
+			this.future.run();
+		}
+	}
+
+	/**
+	 * Queue wait and run time of the actions of one service.
+	 */
+	static final class Stats {
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong rejected = new AtomicLong();
+		final AtomicLong timedOut = new AtomicLong();
+		final AtomicLong waitNanos = new AtomicLong();
+		final AtomicLong maxWaitNanos = new AtomicLong();
+		final AtomicLong runNanos = new AtomicLong();
+		final AtomicLong maxRunNanos = new AtomicLong();
+
+		void record(long wait, long run) {
+			this.count.incrementAndGet();
+			this.waitNanos.addAndGet(wait);
+			this.runNanos.addAndGet(run);
+			max(this.maxWaitNanos, wait);
+			max(this.maxRunNanos, run);
+		}
+
+		private static void max(AtomicLong max, long value) {
+			long current;
+			while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+				// retry
+			}
+		}
+
+		JSONObject toJSON() throws JSONException {
+			long n = Math.max(1, this.count.get());
+			JSONObject json = new JSONObject();
+			json.put("count", this.count.get());
+			json.put("rejected", this.rejected.get());
+			json.put("timedOut", this.timedOut.get());
+			json.put("waitAvgMs", this.waitNanos.get() / n / 1e6);
+			json.put("waitMaxMs", this.maxWaitNanos.get() / 1e6);
+			json.put("runAvgMs", this.runNanos.get() / n / 1e6);
+			json.put("runMaxMs", this.maxRunNanos.get() / 1e6);
+			return json;
+		}
+
+		@Override
+		public String toString() {
+			long n = Math.max(1, this.count.get());
+			return String.format("count=%d rejected=%d timedOut=%d wait avg=%.2fms max=%.2fms run avg=%.2fms max=%.2fms",
+					this.count.get(), this.rejected.get(), this.timedOut.get(),
+					this.waitNanos.get() / n / 1e6, this.maxWaitNanos.get() / 1e6,
+					this.runNanos.get() / n / 1e6, this.maxRunNanos.get() / 1e6);
+		}
+	}
+
+	/**
+	 * Runs the actions of one service one after the other on the pool.
+	 * <p/>
+	 * Actions are handed to the pool outside the lock, since the pool may run one on the calling
+	 * thread. An action that finishes while it is being handed over doesn't hand over the next one
+	 * itself, the loop in {@link #submit(Task)} does, so a run of caller-runs actions doesn't nest.
+	 */
+	private final class Serial {
+		private final LinkedList<Task> tasks = new LinkedList<Task>();
+		private Task active;
+		/**
+		 * Thread handing an action over to the pool, and whether that action has finished meanwhile.
+		 */
+		private Thread submitting;
+		private boolean finishedInline;
+
+		void execute(Task task) {
+			Task next = null;
+			synchronized (this) {
+				this.tasks.add(task);
+				if (this.active == null) {
+					next = this.takeNext();
+				}
+			}
+			this.submit(next);
+		}
+
+		/**
+		 * Called when the active action has finished.
+		 */
+		private void finished() {
+			Task next;
+			synchronized (this) {
+				if (this.submitting == Thread.currentThread()) {
+					this.finishedInline = true;
+					return;
+				}
+				next = this.takeNext();
+			}
+			this.submit(next);
+		}
+
+		private Task takeNext() {
+			this.active = this.tasks.poll();
+			return this.active;
+		}
+
+		private void submit(Task next) {
+			while (next != null) {
+				synchronized (this) {
+					this.submitting = Thread.currentThread();
+					this.finishedInline = false;
+				}
+				try {
+					PluginExecutor.this.pool.execute(this.wrap(next));
+				} finally {
+					synchronized (this) {
+						// A pool thread that finished the action may be handing over the next one already
+						next = null;
+						if (this.submitting == Thread.currentThread()) {
+							this.submitting = null;
+							if (this.finishedInline) {
+								next = this.takeNext();
+							}
+						}
+					}
+				}
+			}
+		}
+
+		private Task wrap(final Task next) {
+			return new Task(next.service) {
+				@Override
+				void execute() {
+					try {
+						next.run();
+					} finally {
+						Serial.this.finished();
+					}
+				}
+
+				@Override
+				void rejected() {
+					try {
+						next.rejected();
+					} finally {
+						Serial.this.finished();
+					}
+				}
+			};
+		}
+	}
+
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * Cancels the actions that run past their timeout.
+	 */
+	private final ScheduledThreadPoolExecutor deadlines;
+
+	private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+	/**
+	 * Serial executor of each serial service.
+	 */
+	private final ConcurrentHashMap<String, Serial> serials = new ConcurrentHashMap<String, Serial>();
+
+	/**
+	 * @param coreSize  Number of threads kept running
+	 * @param maxSize   Max number of threads
+	 * @param queueSize Max number of actions waiting for a thread
+	 * @param keepAlive Time in seconds threads beyond the core size are kept idle
+	 * @param rejection Rejection policy: abort, discardOldest or callerRuns
+	 */
+	PluginExecutor(int coreSize, int maxSize, int queueSize, int keepAlive, String rejection) {
+		final AtomicInteger threads = new AtomicInteger();
+		ThreadFactory factory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "gap-plugin-" + threads.incrementAndGet());
+			}
+		};
+		this.pool = new ThreadPoolExecutor(coreSize, Math.max(coreSize, maxSize), keepAlive, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), factory, this.rejectionHandler(rejection));
+		this.deadlines = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gap-plugin-deadline");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		Log.d(TAG, String.format("PluginExecutor core=%d max=%d queue=%d rejection=%s", coreSize, maxSize, queueSize, rejection));
+	}
+
+	private RejectedExecutionHandler rejectionHandler(String rejection) {
+		if ("callerRuns".equals(rejection)) {
+			return new RejectedExecutionHandler() {
+				@Override
+				public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+					if (!executor.isShutdown()) {
+						Log.w(TAG, "Pool full, running on caller: " + ((Task) r).service);
+						((Task) r).run();
+					} else {
+						PluginExecutor.this.reject((Task) r);
+					}
+				}
+			};
+		} else if ("discardOldest".equals(rejection)) {
+			return new RejectedExecutionHandler() {
+				@Override
+				public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+					Runnable oldest = executor.isShutdown() ? null : executor.getQueue().poll();
+					if (oldest == null) {
+						PluginExecutor.this.reject((Task) r);
+						return;
+					}
+					PluginExecutor.this.reject((Task) oldest);
+					executor.execute(r);
+				}
+			};
+		}
+		if (rejection != null && !"abort".equals(rejection)) {
+			Log.e(TAG, "Unknown rejection policy: " + rejection);
+		}
+		return new RejectedExecutionHandler() {
+			@Override
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+				PluginExecutor.this.reject((Task) r);
+			}
+		};
+	}
+
+	/**
+	 * Run the actions of a service one at a time, in order.
+	 *
+	 * @param service
+	 */
+	void setSerial(String service) {
+		if (this.serials.putIfAbsent(service, new Serial()) == null) {
+			Log.d(TAG, "Serial service: " + service);
+		}
+	}
+
+	private void reject(Task task) {
+		Log.w(TAG, "Pool full, rejected action of " + task.service);
+		this.statsOf(task.service).rejected.incrementAndGet();
+		task.rejected();
+	}
+
+	/**
+	 * Run an action on the pool.
+	 *
+	 * @param task
+	 */
+	void execute(Task task) {
+		this.execute(task, 0);
+	}
+
+	/**
+	 * Run an action on the pool, cancelling it if it hasn't finished in time.
+	 *
+	 * @param task
+	 * @param timeout Milliseconds from now the action must finish in, waiting in the queue included,
+	 *                0 for no limit
+	 */
+	void execute(final Task task, long timeout) {
+		final Stats stats = this.statsOf(task.service);
+		final long queued = System.nanoTime();
+		final ScheduledFuture<?> deadline = timeout > 0 ? this.scheduleDeadline(task, timeout) : null;
+		Task timed = new Task(task.service) {
+			@Override
+			void execute() {
+				long start = System.nanoTime();
+				try {
+					task.run();
+				} finally {
+					stats.record(start - queued, System.nanoTime() - start);
+					if (deadline != null) {
+						deadline.cancel(false);
+					}
+				}
+			}
+
+			@Override
+			void rejected() {
+				if (deadline != null) {
+					deadline.cancel(false);
+				}
+				task.rejected();
+			}
+		};
+		Serial serial = this.serials.get(task.service);
+		if (serial != null) {
+			serial.execute(timed);
+		} else {
+			this.pool.execute(timed);
+		}
+	}
+
+	private ScheduledFuture<?> scheduleDeadline(final Task task, final long timeout) {
+		try {
+			return this.deadlines.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (task.cancel()) {
+						Log.w(TAG, "Action of " + task.service + " timed out after " + timeout + "ms");
+						PluginExecutor.this.statsOf(task.service).timedOut.incrementAndGet();
+						task.timedOut();
+					}
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// Shut down, the action is rejected by the pool as well
+			return null;
+		}
+	}
+
+	private Stats statsOf(String service) {
+		Stats s = this.stats.get(service);
+		if (s == null) {
+			Stats created = new Stats();
+			s = this.stats.putIfAbsent(service, created);
+			if (s == null) {
+				s = created;
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Get the statistics of every service that had actions run.
+	 *
+	 * @return Copy of the map from service name to its stats
+	 */
+	Map<String, Stats> getStats() {
+		return new HashMap<String, Stats>(this.stats);
+	}
+
+	/**
+	 * Get the statistics of every service that had actions run, by service name.
+	 *
+	 * @return
+	 * @throws JSONException
+	 */
+	JSONObject statsToJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		for (Map.Entry<String, Stats> entry : this.stats.entrySet()) {
+			json.put(entry.getKey(), entry.getValue().toJSON());
+		}
+		return json;
+	}
+
+	/**
+	 * Log the statistics of every service.
+	 *
+	 * @param priority Log priority, such as Log.DEBUG
+	 */
+	void logStats(int priority) {
+		for (Map.Entry<String, Stats> entry : this.stats.entrySet()) {
+			Log.println(priority, TAG, entry.getKey() + ": " + entry.getValue());
+		}
+	}
+
+	/**
+	 * Run a task periodically on the thread that cancels timed out actions, until shutdown.
+	 * The task must be quick.
+	 *
+	 * @param task
+	 * @param period Milliseconds
+	 * @return The future to cancel it with, null if shut down
+	 */
+	ScheduledFuture<?> schedule(Runnable task, long period) {
+		try {
+			return this.deadlines.scheduleAtFixedRate(task, period, period, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Let running actions finish and stop the threads. Queued actions still run.
+	 */
+	void shutdown() {
+		this.pool.shutdown();
+		this.deadlines.shutdownNow();
+	}
+}
@@ -13,14 +13,23 @@ import android.content.res.XmlResourceParser;
 import android.util.Log;
 import android.webkit.WebView;
 import com.phonegap.api.IPlugin;
+import com.phonegap.api.Plugin;
 import com.phonegap.api.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * PluginManager is exposed to JavaScript in the PhoneGap WebView.
@@ -31,7 +40,15 @@ import java.util.Map.Entry;
 public final class PluginManager {
 	private static final String TAG = "GAP_" + PluginManager.class.getSimpleName();
 
-	private HashMap<String, IPlugin> plugins = new HashMap<String, IPlugin>();
+	/**
+	 * Registry generated from plugins.xml at build time, null if the build didn't generate one.
+	 */
+	private static final PluginRegistry REGISTRY = loadRegistry();
+
+	/**
+	 * Plugin of each class, created once by the first caller while later callers wait for it.
+	 */
+	private final ConcurrentHashMap<String, FutureTask<IPlugin>> plugins = new ConcurrentHashMap<String, FutureTask<IPlugin>>();
 	private HashMap<String, String> services = new HashMap<String, String>();
 
 	private Context ctx;
@@ -48,6 +65,31 @@ public final class PluginManager {
 	 */
 	private HashMap<String, String> urlMap = new HashMap<String, String>();
 
+	/**
+	 * Pool async actions run on, configured by the executor element of plugins.xml.
+	 */
+	private PluginExecutor executor;
+
+	/**
+	 * Results of cacheable actions.
+	 */
+	private final ResultCache cache = new ResultCache(ResultCache.DEFAULT_MAX_ENTRIES);
+
+	/**
+	 * Call counts and latencies of each action.
+	 */
+	private final Metrics metrics = new Metrics();
+
+	/**
+	 * Async actions that haven't finished yet, by callback id.
+	 */
+	private final ConcurrentHashMap<String, PluginExecutor.Task> pending = new ConcurrentHashMap<String, PluginExecutor.Task>();
+
+	/**
+	 * Services marked onload in plugins.xml, created in the background by {@link #warmUp()}.
+	 */
+	private final ArrayList<String> onloadServices = new ArrayList<String>();
+
 	public PluginManager(Context ctx, WebView webView, GapView gapController) {
 		this.ctx = ctx;
 		this.webView = webView;
@@ -57,6 +99,7 @@ public final class PluginManager {
 
 	/**
 	 * Load plugins name to impl class mapping from res/xml/plugins.xml
+	 * <plugin name="Service" value="plugin class" serial="true|false" onload="true|false" />
 	 */
 	private void loadPluginsList() {
 		int id = ctx.getResources().getIdentifier("plugins", "xml", ctx.getPackageName());
@@ -66,6 +109,7 @@ public final class PluginManager {
 		XmlResourceParser xml = ctx.getResources().getXml(id);
 		int eventType = -1;
 		String pluginClass, pluginName;
+		ArrayList<String> serialPlugins = new ArrayList<String>();
 		while (eventType != XmlResourceParser.END_DOCUMENT) {
 			if (eventType == XmlResourceParser.START_TAG) {
 				String strNode = xml.getName();
@@ -74,8 +118,21 @@ public final class PluginManager {
 					pluginName = xml.getAttributeValue(null, "name");
 					Log.d(TAG, "Plugin: " + pluginName + " => " + pluginClass);
 					this.addService(pluginName, pluginClass);
+					if (xml.getAttributeBooleanValue(null, "serial", false)) {
+						serialPlugins.add(pluginName);
+					}
+					if (xml.getAttributeBooleanValue(null, "onload", false)) {
+						this.onloadServices.add(pluginName);
+					}
 				} else if (strNode.equals("url-filter")) {
 					this.urlMap.put(xml.getAttributeValue(null, "value"), ""/*pluginName*/);
+				} else if (strNode.equals("executor")) {
+					this.executor = new PluginExecutor(
+							xml.getAttributeIntValue(null, "core", PluginExecutor.DEFAULT_CORE_SIZE),
+							xml.getAttributeIntValue(null, "max", PluginExecutor.DEFAULT_MAX_SIZE),
+							xml.getAttributeIntValue(null, "queue", PluginExecutor.DEFAULT_QUEUE_SIZE),
+							xml.getAttributeIntValue(null, "keepAlive", PluginExecutor.DEFAULT_KEEP_ALIVE),
+							xml.getAttributeValue(null, "rejection"));
 				}
 			}
 			try {
@@ -86,6 +143,13 @@ public final class PluginManager {
 				e.printStackTrace();
 			}
 		}
+		if (this.executor == null) {
+			this.executor = new PluginExecutor(PluginExecutor.DEFAULT_CORE_SIZE, PluginExecutor.DEFAULT_MAX_SIZE,
+					PluginExecutor.DEFAULT_QUEUE_SIZE, PluginExecutor.DEFAULT_KEEP_ALIVE, null);
+		}
+		for (String serial : serialPlugins) {
+			this.executor.setSerial(serial);
+		}
 	}
 
 	/**
@@ -109,72 +173,253 @@ public final class PluginManager {
 	 *                   PhoneGap.callbackError(...) is called once the plugin code has executed.
 	 * @return JSON encoded string with a response message and status.
 	 */
-	@SuppressWarnings("unchecked")
 	public String exec(final String service, final String action, final String callbackId, final String jsonArgs, final boolean async) {
+		long received = System.nanoTime();
+		JSONArray args;
+		try {
+			long parsing = Tracer.begin();
+			args = new JSONArray(jsonArgs);
+			Tracer.end(parsing, "parseArgs", service, action, callbackId);
+		} catch (JSONException e) {
+			Log.d(TAG, "ERROR: " + e.toString());
+			PluginResult cr = new PluginResult(PluginResult.Status.JSON_EXCEPTION);
+			if (async) {
+				gapController.sendResult(cr, callbackId, false, null);
+			}
+			return cr.getJSONString();
+		}
+		String r = this.exec(service, action, callbackId, args, async, received);
+		traceExec(received, service, action, callbackId);
+		return r;
+	}
+
+	/**
+	 * Record the trace span of an exec on the calling thread, from the request coming in.
+	 */
+	private static void traceExec(long received, String service, String action, String callbackId) {
+		if (Tracer.enabled()) {
+			Tracer.span("exec", received, System.nanoTime(), service, action, callbackId, -1);
+		}
+	}
+
+	/**
+	 * Receives a batch of requests in one call and executes each one as {@link #exec} does, in order.
+	 * Async requests are started on their own threads, so the batch returns once the sync ones are done.
+	 * <p/>
+	 * This saves a JavaScript to Java round trip and a JSON parse of the arguments per request,
+	 * which adds up when a page makes many calls at once, for example on startup.
+	 *
+	 * @param jsonCommands An Array literal string of [service, action, callbackId, args] requests,
+	 *                     where args is the Array of arguments for the plugin execute method.
+	 * @return An Array literal string with the result exec returns for each request,
+	 *         null where it returns nothing.
+	 */
+	public String execBatch(final String jsonCommands) {
+		JSONArray commands;
+		try {
+			commands = new JSONArray(jsonCommands);
+		} catch (JSONException e) {
+			Log.d(TAG, "ERROR: " + e.toString());
+			return new PluginResult(PluginResult.Status.JSON_EXCEPTION).getJSONString();
+		}
+		StringBuilder results = new StringBuilder("[");
+		for (int i = 0; i < commands.length(); i++) {
+			String r;
+			long received = System.nanoTime();
+			try {
+				JSONArray command = commands.getJSONArray(i);
+				JSONArray args = command.optJSONArray(3);
+				String service = command.getString(0);
+				String action = command.getString(1);
+				String callbackId = command.getString(2);
+				r = this.exec(service, action, callbackId, args != null ? args : new JSONArray(), true, received);
+				traceExec(received, service, action, callbackId);
+			} catch (JSONException e) {
+				Log.d(TAG, "ERROR: " + e.toString());
+				r = new PluginResult(PluginResult.Status.JSON_EXCEPTION).getJSONString();
+			}
+			if (i > 0) {
+				results.append(',');
+			}
+			results.append(r.length() > 0 ? r : "null");
+		}
+		return results.append(']').toString();
+	}
+
+	/**
+	 * Executes a request whose arguments have been parsed already.
+	 *
+	 * @param received System.nanoTime() the request came in at
+	 * @see #exec(String, String, String, String, boolean)
+	 */
+	@SuppressWarnings("unchecked")
+	private String exec(final String service, final String action, final String callbackId, final JSONArray args,
+						final boolean async, final long received) {
 		PluginResult cr = null;
 		boolean runAsync = async;
-		try {
-			final JSONArray args = new JSONArray(jsonArgs);
-			final IPlugin plugin = this.getPlugin(service);
-			if (plugin != null) {
-				runAsync = async && !plugin.isSynch(action);
+		final IPlugin plugin = this.getPlugin(service);
+		if (plugin != null) {
+			runAsync = async && !plugin.isSynch(action);
+			final Metrics.Action metrics = this.metrics.of(service, action);
+			metrics.calls.incrementAndGet();
+
+			// Answer a repeated call from the cache if the plugin allows it
+			final long cacheTtl = plugin instanceof Plugin ? ((Plugin) plugin).getCacheTtl(action) : 0;
+			final String cacheKey = cacheTtl > 0 ? ResultCache.key(plugin.getClass().getName(), action, args) : null;
+			final long cacheGeneration = this.cache.generation();
+			PluginResult cached = cacheKey != null ? this.cache.get(cacheKey) : null;
+			if (cached != null) {
+				metrics.cacheHits.incrementAndGet();
 				if (runAsync) {
-					// Run this on a different thread so that this one can return back to JS
-					Thread thread = new Thread(new Runnable() {
-						@Override
-						public void run() {
-							try {
-								// Call execute on the plugin so that it can do it's thing
-								PluginResult cr = plugin.execute(action, args, callbackId);
-								int status = cr.getStatus();
+					gapController.sendResult(cached, callbackId, true, null);
+					return "";
+				}
+				return cached.getJSONString();
+			}
 
-								Log.v(TAG, String.format("srv:%s;%s;json:%s callbackId:%s async:%b", service, cr, jsonArgs, callbackId, async));
-								// If no result to be sent and keeping callback, then no need to sent back to JavaScript
-								if ((status == PluginResult.Status.NO_RESULT.ordinal()) && cr.getKeepCallback()) {
+			if (runAsync) {
+				// Run this on a pool thread so that this one can return back to JS
+				PluginExecutor.Task call = new PluginExecutor.Task(service) {
+					@Override
+					void execute() {
+						// Callbacks sent from here on count for the action
+						Metrics.Action previous = Metrics.enter(metrics);
+						try {
+							// Call execute on the plugin so that it can do it's thing
+							long start = System.nanoTime();
+							metrics.dispatch.record((start - received) / 1000);
+							if (Tracer.enabled()) {
+								Tracer.span("dispatch", received, start, service, action, callbackId, -1);
+							}
+							PluginResult cr;
+							try {
+								cr = plugin.execute(action, args, callbackId);
+							} finally {
+								metrics.execute.recordSince(start);
+								if (Tracer.enabled()) {
+									Tracer.span("execute", start, System.nanoTime(), service, action, callbackId, -1);
 								}
+							}
+							int status = cr.getStatus();
 
-								// Check the success (OK, NO_RESULT & !KEEP_CALLBACK)
-								else if ((status == PluginResult.Status.OK.ordinal()) || (status == PluginResult.Status.NO_RESULT.ordinal())) {
-									gapController.sendJavascript(cr.toSuccessCallbackString(callbackId));
-								}
+							// Cancelled or timed out while running, JS doesn't expect the result anymore
+							if (this.isCancelled()) {
+								return;
+							}
+							if (cacheKey != null) {
+								PluginManager.this.cache.put(cacheKey, cr, cacheTtl, cacheGeneration);
+							}
 
-								// If error
-								else {
-									gapController.sendJavascript(cr.toErrorCallbackString(callbackId));
-								}
-							} catch (Exception e) {
+							if (Log.isLoggable(TAG, Log.VERBOSE)) {
+								Log.v(TAG, String.format("srv:%s;%s;args:%s callbackId:%s async:%b", service, cr, args, callbackId, async));
+							}
+							// If no result to be sent and keeping callback, then no need to sent back to JavaScript
+							if ((status == PluginResult.Status.NO_RESULT.ordinal()) && cr.getKeepCallback()) {
+							}
+
+							// Check the success (OK, NO_RESULT & !KEEP_CALLBACK)
+							else if ((status == PluginResult.Status.OK.ordinal()) || (status == PluginResult.Status.NO_RESULT.ordinal())) {
+								gapController.sendResult(cr, callbackId, true, null);
+							}
+
+							// If error
+							else {
+								metrics.errors.incrementAndGet();
+								gapController.sendResult(cr, callbackId, false, null);
+							}
+						} catch (Exception e) {
+							metrics.errors.incrementAndGet();
+							if (!this.isCancelled()) {
 								Log.e(TAG, "exec", e);
 								PluginResult cr = new PluginResult(PluginResult.Status.ERROR, e.getMessage());
-								gapController.sendJavascript(cr.toErrorCallbackString(callbackId));
+								gapController.sendResult(cr, callbackId, false, null);
 							}
+						} finally {
+							Metrics.exit(previous);
+							PluginManager.this.removePending(callbackId, this);
 						}
-					});
-					thread.start();
-					return "";
-				} else {
-					// Call execute on the plugin so that it can do it's thing
-					cr = plugin.execute(action, args, callbackId);
+					}
+
+					@Override
+					void rejected() {
+						metrics.errors.incrementAndGet();
+						PluginManager.this.removePending(callbackId, this);
+						if (!this.isCancelled()) {
+							PluginResult cr = new PluginResult(PluginResult.Status.ERROR, "Too many pending requests");
+							gapController.sendResult(cr, callbackId, false, null);
+						}
+					}
 
-					// If no result to be sent and keeping callback, then no need to sent back to JavaScript
-					if ((cr.getStatus() == PluginResult.Status.NO_RESULT.ordinal()) && cr.getKeepCallback()) {
-						return "";
+					@Override
+					void timedOut() {
+						metrics.errors.incrementAndGet();
+						PluginManager.this.removePending(callbackId, this);
+						PluginResult cr = new PluginResult(PluginResult.Status.ERROR, "Timed out");
+						gapController.sendResult(cr, callbackId, false, null);
 					}
+				};
+				if (callbackId != null) {
+					this.pending.put(callbackId, call);
+				}
+				this.executor.execute(call, plugin instanceof Plugin ? ((Plugin) plugin).getTimeout(action) : 0);
+				return "";
+			} else {
+				// Call execute on the plugin so that it can do it's thing
+				Metrics.Action previous = Metrics.enter(metrics);
+				long start = System.nanoTime();
+				metrics.dispatch.record((start - received) / 1000);
+				try {
+					cr = plugin.execute(action, args, callbackId);
+				} finally {
+					metrics.execute.recordSince(start);
+					Metrics.exit(previous);
+					if (Tracer.enabled()) {
+						Tracer.span("execute", start, System.nanoTime(), service, action, callbackId, -1);
+					}
+				}
+				if (cacheKey != null) {
+					this.cache.put(cacheKey, cr, cacheTtl, cacheGeneration);
 				}
+				if (!cr.isSuccess()) {
+					metrics.errors.incrementAndGet();
+				}
+
+				// If no result to be sent and keeping callback, then no need to sent back to JavaScript
+				if ((cr.getStatus() == PluginResult.Status.NO_RESULT.ordinal()) && cr.getKeepCallback()) {
+					return "";
+				}
+				long serializing = Tracer.begin();
+				String json = cr.getJSONString();
+				Tracer.end(serializing, "serialize", service, action, callbackId);
+				metrics.payload.record(json.length());
+				return json;
 			}
-		} catch (JSONException e) {
-			Log.d(TAG, "ERROR: " + e.toString());
-			cr = new PluginResult(PluginResult.Status.JSON_EXCEPTION);
 		}
 		// if async we have already returned at this point unless there was an error...
 		if (runAsync) {
 			if (cr == null) {
 				cr = new PluginResult(PluginResult.Status.CLASS_NOT_FOUND_EXCEPTION);
 			}
-			gapController.sendJavascript(cr.toErrorCallbackString(callbackId));
+			gapController.sendResult(cr, callbackId, false, null);
 		}
 		return (cr != null ? cr.getJSONString() : "{ status: 0, message: 'all good' }");
 	}
 
+	/**
+	 * Load the registry generated by the build, once for all plugins.
+	 * Builds that don't run the generator, such as some IDE builds, fall back to reflection.
+	 *
+	 * @return The registry or null
+	 */
+	private static PluginRegistry loadRegistry() {
+		try {
+			return (PluginRegistry) Class.forName("com.phonegap.GeneratedPluginRegistry").newInstance();
+		} catch (Exception e) {
+			Log.d(TAG, "No generated plugin registry, plugins are created by reflection");
+			return null;
+		}
+	}
+
 	/**
 	 * Get the class.
 	 *
@@ -218,15 +463,19 @@ public final class PluginManager {
 	@SuppressWarnings("unchecked")
 	private IPlugin addPlugin(String pluginName, String className) {
 		try {
-			Class c = getClassByName(className);
-			if (isPhoneGapPlugin(c)) {
-				IPlugin plugin = (IPlugin) c.newInstance();
-				this.plugins.put(className, plugin);
-				plugin.setContext(ctx);
-				plugin.setController(gapController);
-				plugin.onResume(true);
-				return plugin;
+			IPlugin plugin = REGISTRY != null ? REGISTRY.newPlugin(className) : null;
+			if (plugin == null) {
+				// Not built into the registry, e.g. a third party plugin
+				Class c = getClassByName(className);
+				if (!isPhoneGapPlugin(c)) {
+					return null;
+				}
+				plugin = (IPlugin) c.newInstance();
 			}
+			plugin.setContext(ctx);
+			plugin.setController(gapController);
+			plugin.onResume(true);
+			return plugin;
 		} catch (Exception e) {
 			Log.e(TAG, "Error adding plugin " + pluginName + ". You might set wrong Plugin class FQN: " + className, e);
 		}
@@ -241,12 +490,130 @@ public final class PluginManager {
 	 * @param className The class of the loaded plugin.
 	 * @return
 	 */
-	private IPlugin getPlugin(String pluginName) {
-		String className = this.services.get(pluginName);
-		if (this.plugins.containsKey(className)) {
-			return this.plugins.get(className);
-		} else {
-			return this.addPlugin(pluginName, className);
+	private IPlugin getPlugin(final String pluginName) {
+		final String className = this.services.get(pluginName);
+		if (className == null) {
+			return null;
+		}
+		FutureTask<IPlugin> future = this.plugins.get(className);
+		if (future == null) {
+			FutureTask<IPlugin> created = new FutureTask<IPlugin>(new Callable<IPlugin>() {
+				@Override
+				public IPlugin call() {
+					return PluginManager.this.addPlugin(pluginName, className);
+				}
+			});
+			future = this.plugins.putIfAbsent(className, created);
+			if (future == null) {
+				future = created;
+				created.run();
+			}
+		}
+
+		// Wait if another thread, such as the warm up, is creating it
+		IPlugin plugin = getUninterruptibly(future);
+		if (plugin == null) {
+			// Let the next call try again
+			this.plugins.remove(className, future);
+		}
+		return plugin;
+	}
+
+	private static IPlugin getUninterruptibly(FutureTask<IPlugin> future) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Log.e(TAG, "Error creating plugin", e.getCause());
+					return null;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Drop the cached results of an action.
+	 *
+	 * @param className Class of the plugin
+	 * @param action    The action, or null for all actions of the plugin
+	 */
+	void invalidateCache(String className, String action) {
+		this.cache.invalidate(className, action);
+	}
+
+	private void removePending(String callbackId, PluginExecutor.Task call) {
+		if (callbackId != null) {
+			this.pending.remove(callbackId, call);
+		}
+	}
+
+	/**
+	 * Cancel an async action. A queued action won't run, a running one has its thread interrupted.
+	 * No callback is made for a cancelled action.
+	 *
+	 * @param callbackId The callback id the action was called with
+	 * @return T=cancelled, F=no such action is pending
+	 */
+	public boolean cancel(String callbackId) {
+		PluginExecutor.Task call = this.pending.remove(callbackId);
+		return call != null && call.cancel();
+	}
+
+	/**
+	 * Cancel all pending async actions, such as when the page they were called from goes away.
+	 */
+	public void cancelAll() {
+		for (String callbackId : this.pending.keySet()) {
+			this.cancel(callbackId);
+		}
+	}
+
+	/**
+	 * Get the plugins that have been created.
+	 *
+	 * @return
+	 */
+	private ArrayList<IPlugin> getLoadedPlugins() {
+		ArrayList<IPlugin> loaded = new ArrayList<IPlugin>();
+		for (FutureTask<IPlugin> future : this.plugins.values()) {
+			if (future.isDone()) {
+				IPlugin plugin = getUninterruptibly(future);
+				if (plugin != null) {
+					loaded.add(plugin);
+				}
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Create the plugins marked onload in plugins.xml on pool threads, so their setup doesn't
+	 * delay the first call, which is often made on the UI thread. A call that comes in while
+	 * a plugin is being created waits for it.
+	 */
+	void warmUp() {
+		for (final String service : this.onloadServices) {
+			this.executor.execute(new PluginExecutor.Task(service) {
+				@Override
+				void execute() {
+					long start = System.currentTimeMillis();
+					PluginManager.this.getPlugin(service);
+					Log.d(TAG, "Warmed up " + service + " in " + (System.currentTimeMillis() - start) + "ms");
+				}
+
+				@Override
+				void rejected() {
+					// Created on first call instead
+				}
+			});
 		}
 	}
 
@@ -267,9 +634,7 @@ public final class PluginManager {
 	 * @param multitasking Flag indicating if multitasking is turned on for app
 	 */
 	public void onPause(boolean multitasking) {
-		java.util.Set<Entry<String, IPlugin>> s = this.plugins.entrySet();
-		for (Entry<String, IPlugin> entry : s) {
-			IPlugin plugin = entry.getValue();
+		for (IPlugin plugin : this.getLoadedPlugins()) {
 			plugin.onPause(multitasking);
 		}
 	}
@@ -280,9 +645,7 @@ public final class PluginManager {
 	 * @param multitasking Flag indicating if multitasking is turned on for app
 	 */
 	public void onResume(boolean multitasking) {
-		java.util.Set<Entry<String, IPlugin>> s = this.plugins.entrySet();
-		for (Entry<String, IPlugin> entry : s) {
-			IPlugin plugin = entry.getValue();
+		for (IPlugin plugin : this.getLoadedPlugins()) {
 			plugin.onResume(multitasking);
 		}
 	}
@@ -292,10 +655,13 @@ public final class PluginManager {
 	 */
 	public void onDestroy() {
 		Log.i(TAG, "Destroy.");
+		this.cancelAll();
+		Log.d(TAG, "Result cache: " + this.cache);
+		this.cache.clear();
+		this.executor.logStats(Log.DEBUG);
+		this.executor.shutdown();
 
-		java.util.Set<Entry<String, IPlugin>> s = this.plugins.entrySet();
-		for (Entry<String, IPlugin> entry : s) {
-			IPlugin plugin = entry.getValue();
+		for (IPlugin plugin : this.getLoadedPlugins()) {
 			plugin.onDestroy();
 		}
 
@@ -306,9 +672,7 @@ public final class PluginManager {
 	 * Called when the activity receives a new intent.
 	 */
 	public void onNewIntent(Intent intent) {
-		java.util.Set<Entry<String, IPlugin>> s = this.plugins.entrySet();
-		for (Entry<String, IPlugin> entry : s) {
-			IPlugin plugin = entry.getValue();
+		for (IPlugin plugin : this.getLoadedPlugins()) {
 			plugin.onNewIntent(intent);
 		}
 	}
@@ -328,6 +692,54 @@ public final class PluginManager {
 		return false;
 	}
 
+	/**
+	 * Get the queue wait and run time statistics of the async actions of each service.
+	 *
+	 * @return Map from service name to its stats
+	 */
+	Map<String, PluginExecutor.Stats> getExecutorStats() {
+		return this.executor.getStats();
+	}
+
+	/**
+	 * Get the metrics of each action, the executor statistics of each service and the cache
+	 * statistics, see {@link Metrics}.
+	 *
+	 * @return
+	 * @throws JSONException
+	 */
+	JSONObject getMetrics() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("actions", this.metrics.toJSON());
+		json.put("executor", this.executor.statsToJSON());
+		json.put("cache", this.cache.toJSON());
+		return json;
+	}
+
+	/**
+	 * Log the metrics of each action, the executor statistics and the cache statistics.
+	 */
+	void logMetrics() {
+		for (String line : this.metrics.toString().split("\n")) {
+			if (line.length() > 0) {
+				Log.i(TAG, line);
+			}
+		}
+		this.executor.logStats(Log.INFO);
+		Log.i(TAG, "Result cache: " + this.cache);
+	}
+
+	/**
+	 * Run a task periodically on a framework thread, until the manager is destroyed.
+	 *
+	 * @param task   Must be quick
+	 * @param period Milliseconds
+	 * @return The future to cancel it with, null if destroyed
+	 */
+	ScheduledFuture<?> schedule(Runnable task, long period) {
+		return this.executor.schedule(task, period);
+	}
+
 	private void pluginConfigurationMissing() {
 		System.err.println("=====================================================================================");
 		System.err.println("ERROR: plugin.xml is missing.  Add res/xml/plugins.xml to your project.");
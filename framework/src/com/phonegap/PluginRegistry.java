@@ -0,0 +1,28 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import com.phonegap.api.IPlugin;
+
+/**
+ * Creates plugins without reflection.
+ * <p/>
+ * The build compiles res/xml/plugins.xml into GeneratedPluginRegistry (see plugin-registry.xsl),
+ * which calls the constructor of every plugin listed there. Plugins it doesn't know, such as
+ * third party plugins added to the plugins.xml of an app, are still created by reflection.
+ */
+interface PluginRegistry {
+
+	/**
+	 * Create a plugin.
+	 *
+	 * @param className The plugin class
+	 * @return The new plugin, or null if the class is not in the registry
+	 */
+	IPlugin newPlugin(String className);
+}
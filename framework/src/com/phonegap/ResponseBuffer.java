@@ -0,0 +1,297 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import com.phonegap.api.Statement;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable byte buffer an XHR response is built in, owned by one server thread.
+ * <p/>
+ * JavaScript statements are URL encoded straight into the buffer: chars that don't need encoding
+ * are looked up in a 128 entry table and copied as one byte, everything else is written as
+ * percent encoded UTF-8. No intermediate String or byte[] is created per statement.
+ * The output is the same as the URLEncoder derived encoder this replaces: a lone surrogate is
+ * encoded as '?' (%3F), like String.getBytes("UTF-8") does.
+ * <p/>
+ * A {@link Statement} is not built as a String, it writes its parts into an {@link Appendable}
+ * that encodes them as they come, so a large result is copied once, from its JSON values to here.
+ */
+final class ResponseBuffer {
+
+	/**
+	 * Chars sent as is. Reverting the encoding for common chars reduces the size of the data
+	 * passed to JavaScript, which decodes it with decodeURIComponent().
+	 */
+	private static final boolean[] SAFE = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			SAFE[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			SAFE[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			SAFE[c] = true;
+		}
+		String others = " .-*_'(),<>=?@[]{}:~\"\\/;!";
+		for (int i = 0; i < others.length(); i++) {
+			SAFE[others.charAt(i)] = true;
+		}
+	}
+
+	private static final byte[] HEX = {
+			'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+	};
+
+	/**
+	 * A buffer grown beyond this is dropped on reset, so one big response doesn't pin the memory.
+	 */
+	private static final int MAX_RETAINED = 256 * 1024;
+
+	/**
+	 * Hex digits of a chunk size, leading zeros are allowed, 8 hold any int.
+	 */
+	static final int CHUNK_SIZE_DIGITS = 8;
+
+	/**
+	 * Appends encoded chars to the buffer.
+	 */
+	private final Appendable encoder = new Appendable() {
+		@Override
+		public Appendable append(CharSequence csq) {
+			return this.append(csq, 0, csq.length());
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) {
+			ResponseBuffer.this.appendEncoded(csq, start, end);
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) {
+			if (c < 128 && SAFE[c]) {
+				ResponseBuffer.this.append(c);
+				return this;
+			}
+			return this.append(String.valueOf(c), 0, 1);
+		}
+	};
+
+	private final int initialCapacity;
+	private byte[] bytes;
+	private int length;
+
+	ResponseBuffer(int capacity) {
+		this.initialCapacity = capacity;
+		this.bytes = new byte[capacity];
+	}
+
+	/**
+	 * Empty the buffer for the next response.
+	 */
+	void reset() {
+		if (this.bytes.length > MAX_RETAINED) {
+			this.bytes = new byte[this.initialCapacity];
+		}
+		this.length = 0;
+	}
+
+	int length() {
+		return this.length;
+	}
+
+	/**
+	 * Drop what was appended after a length, such as a statement that failed to serialize.
+	 *
+	 * @param length What {@link #length()} returned before
+	 */
+	void truncate(int length) {
+		if (length < this.length) {
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Append ASCII text, such as headers or already encoded data.
+	 *
+	 * @param s
+	 * @return this
+	 */
+	ResponseBuffer append(String s) {
+		int n = s.length();
+		this.ensure(n);
+		for (int i = 0; i < n; i++) {
+			this.bytes[this.length++] = (byte) s.charAt(i);
+		}
+		return this;
+	}
+
+	/**
+	 * Append one ASCII char.
+	 *
+	 * @param c
+	 * @return this
+	 */
+	ResponseBuffer append(char c) {
+		this.ensure(1);
+		this.bytes[this.length++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * Append a non negative number in decimal, as used by Content-Length.
+	 *
+	 * @param n
+	 * @return this
+	 */
+	ResponseBuffer appendDecimal(int n) {
+		int digits = 1;
+		for (int i = n; i >= 10; i /= 10) {
+			digits++;
+		}
+		this.ensure(digits);
+		for (int i = this.length + digits - 1; i >= this.length; i--) {
+			this.bytes[i] = (byte) ('0' + n % 10);
+			n /= 10;
+		}
+		this.length += digits;
+		return this;
+	}
+
+	/**
+	 * Append the chunk size of a chunk that is appended next, as {@link #CHUNK_SIZE_DIGITS} zeros
+	 * that {@link #setChunkSize(int, int)} overwrites once the size is known. The statements of a
+	 * chunk are encoded once, they are not counted first.
+	 *
+	 * @return Where the chunk size is
+	 */
+	int appendChunkSize() {
+		this.ensure(CHUNK_SIZE_DIGITS);
+		int at = this.length;
+		for (int i = 0; i < CHUNK_SIZE_DIGITS; i++) {
+			this.bytes[this.length++] = '0';
+		}
+		return at;
+	}
+
+	/**
+	 * Write a chunk size in hex over the zeros {@link #appendChunkSize()} appended.
+	 *
+	 * @param at   What appendChunkSize() returned
+	 * @param size Non negative size of the chunk
+	 */
+	void setChunkSize(int at, int size) {
+		for (int i = at + CHUNK_SIZE_DIGITS - 1; i >= at; i--) {
+			this.bytes[i] = HEX[size & 0xf];
+			size >>>= 4;
+		}
+	}
+
+	/**
+	 * Append a JavaScript statement URL encoded as UTF-8.
+	 *
+	 * @param s
+	 * @return this
+	 */
+	ResponseBuffer appendEncoded(CharSequence s) {
+		if (s instanceof Statement) {
+			try {
+				((Statement) s).writeTo(this.encoder);
+			} catch (IOException e) {
+				// The encoder doesn't throw
+				throw new IllegalStateException(e);
+			}
+			return this;
+		}
+		return this.appendEncoded(s, 0, s.length());
+	}
+
+	/**
+	 * Append chars start to end of s URL encoded as UTF-8.
+	 * A surrogate pair split at start or end is encoded as two lone surrogates.
+	 */
+	private ResponseBuffer appendEncoded(CharSequence s, int start, int end) {
+		this.ensure(end - start);
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (c < 128 && SAFE[c]) {
+				if (this.length == this.bytes.length) {
+					this.ensure(end - i);
+				}
+				this.bytes[this.length++] = (byte) c;
+			} else if (c < 0x80) {
+				this.percent(c);
+			} else if (c < 0x800) {
+				this.percent(0xc0 | (c >> 6));
+				this.percent(0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				this.percent(0xf0 | (cp >> 18));
+				this.percent(0x80 | ((cp >> 12) & 0x3f));
+				this.percent(0x80 | ((cp >> 6) & 0x3f));
+				this.percent(0x80 | (cp & 0x3f));
+			} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				this.percent('?');
+			} else {
+				this.percent(0xe0 | (c >> 12));
+				this.percent(0x80 | ((c >> 6) & 0x3f));
+				this.percent(0x80 | (c & 0x3f));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Write the content to a stream.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeTo(OutputStream out) throws IOException {
+		out.write(this.bytes, 0, this.length);
+	}
+
+	/**
+	 * Copy the content into a buffer, which must have enough room.
+	 *
+	 * @param out
+	 */
+	void writeTo(ByteBuffer out) {
+		out.put(this.bytes, 0, this.length);
+	}
+
+	private void percent(int b) {
+		this.ensure(3);
+		this.bytes[this.length++] = '%';
+		this.bytes[this.length++] = HEX[(b >> 4) & 0xf];
+		this.bytes[this.length++] = HEX[b & 0xf];
+	}
+
+	private void ensure(int n) {
+		if (this.length + n > this.bytes.length) {
+			int capacity = this.bytes.length << 1;
+			while (capacity < this.length + n) {
+				capacity <<= 1;
+			}
+			byte[] grown = new byte[capacity];
+			System.arraycopy(this.bytes, 0, grown, 0, this.length);
+			this.bytes = grown;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new String(this.bytes, 0, this.length);
+	}
+}
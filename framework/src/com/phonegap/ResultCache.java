@@ -0,0 +1,208 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import android.util.Log;
+import com.phonegap.api.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Successful results of cacheable plugin actions, by plugin class, action and arguments.
+ * <p/>
+ * A plugin declares how long the result of an action stays valid with
+ * {@link com.phonegap.api.Plugin#getCacheTtl(String)}. A call with the same arguments made within
+ * that time is answered from here without running the plugin. A plugin that knows a result has
+ * changed drops it early with {@link com.phonegap.api.Plugin#invalidateCache(String)}.
+ * <p/>
+ * Only OK results that don't keep the callback are cached. Two calls that miss at once both run
+ * the plugin, the last result is kept. A result is not cached if its action was invalidated while
+ * the call ran, since it may have been computed from the old state: every invalidation takes a new
+ * generation, and a put carries the generation its call started in.
+ */
+final class ResultCache {
+
+	private static final String TAG = "GAP_" + ResultCache.class.getSimpleName();
+
+	static final int DEFAULT_MAX_ENTRIES = 128;
+
+	private static final class Entry {
+		final PluginResult result;
+		final long expires;
+
+		Entry(PluginResult result, long expires) {
+			this.result = result;
+			this.expires = expires;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	/**
+	 * Generation of the last invalidation, by key prefix of the plugin or action, "" for all.
+	 */
+	private final ConcurrentHashMap<String, Long> invalidated = new ConcurrentHashMap<String, Long>();
+	private final AtomicLong generation = new AtomicLong();
+	private final int maxEntries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxEntries Max number of results kept, a result is not cached while all are still valid
+	 */
+	ResultCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Get the key of a call.
+	 *
+	 * @param className Class of the plugin
+	 * @param action
+	 * @param args
+	 * @return
+	 */
+	static String key(String className, String action, JSONArray args) {
+		return prefix(className, action) + args;
+	}
+
+	private static String prefix(String className, String action) {
+		return className + '#' + action + '#';
+	}
+
+	/**
+	 * Get the cached result of a call.
+	 *
+	 * @param key See {@link #key(String, String, JSONArray)}
+	 * @return The result or null if there is none or it has expired
+	 */
+	PluginResult get(String key) {
+		Entry entry = this.entries.get(key);
+		if (entry != null) {
+			if (entry.expires - System.nanoTime() > 0) {
+				this.hits.incrementAndGet();
+				return entry.result;
+			}
+			this.entries.remove(key, entry);
+		}
+		this.misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Get the current generation, to pass to {@link #put} for a call that starts now.
+	 *
+	 * @return
+	 */
+	long generation() {
+		return this.generation.get();
+	}
+
+	/**
+	 * Cache the result of a call if it can be reused.
+	 *
+	 * @param key        See {@link #key(String, String, JSONArray)}
+	 * @param result
+	 * @param ttl        Milliseconds the result stays valid
+	 * @param generation See {@link #generation()}, taken when the call started
+	 */
+	void put(String key, PluginResult result, long ttl, long generation) {
+		if (result.getStatus() != PluginResult.Status.OK.ordinal() || result.getKeepCallback()) {
+			return;
+		}
+		if (this.isInvalidated(key, generation)) {
+			return;
+		}
+		if (this.entries.size() >= this.maxEntries && !this.entries.containsKey(key)) {
+			this.purgeExpired();
+			if (this.entries.size() >= this.maxEntries) {
+				Log.d(TAG, "Cache full, not caching " + key);
+				return;
+			}
+		}
+		Entry entry = new Entry(result, System.nanoTime() + ttl * 1000000L);
+		this.entries.put(key, entry);
+
+		// An invalidation that ran meanwhile may have missed the entry
+		if (this.isInvalidated(key, generation)) {
+			this.entries.remove(key, entry);
+		}
+	}
+
+	/**
+	 * Check if the key was invalidated after the generation.
+	 */
+	private boolean isInvalidated(String key, long generation) {
+		int plugin = key.indexOf('#') + 1;
+		int action = key.indexOf('#', plugin) + 1;
+		return isAfter(this.invalidated.get(""), generation)
+				|| isAfter(this.invalidated.get(key.substring(0, plugin)), generation)
+				|| isAfter(this.invalidated.get(key.substring(0, action)), generation);
+	}
+
+	/**
+	 * Record a new generation for the invalidated prefix, so generations stored per prefix only grow.
+	 */
+	private synchronized void markInvalidated(String prefix) {
+		this.invalidated.put(prefix, this.generation.incrementAndGet());
+	}
+
+	private static boolean isAfter(Long invalidated, long generation) {
+		return invalidated != null && invalidated > generation;
+	}
+
+	/**
+	 * Drop the cached results of an action, whatever its arguments.
+	 *
+	 * @param className Class of the plugin
+	 * @param action    The action, or null for all actions of the plugin
+	 */
+	void invalidate(String className, String action) {
+		String prefix = action != null ? prefix(className, action) : className + '#';
+		this.markInvalidated(prefix);
+		for (Iterator<String> i = this.entries.keySet().iterator(); i.hasNext(); ) {
+			if (i.next().startsWith(prefix)) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drop all cached results.
+	 */
+	void clear() {
+		this.markInvalidated("");
+		this.entries.clear();
+	}
+
+	JSONObject toJSON() throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("entries", this.entries.size());
+		json.put("hits", this.hits.get());
+		json.put("misses", this.misses.get());
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("entries=%d hits=%d misses=%d", this.entries.size(), this.hits.get(), this.misses.get());
+	}
+
+	private void purgeExpired() {
+		long now = System.nanoTime();
+		for (Iterator<Entry> i = this.entries.values().iterator(); i.hasNext(); ) {
+			if (i.next().expires - now <= 0) {
+				i.remove();
+			}
+		}
+	}
+}
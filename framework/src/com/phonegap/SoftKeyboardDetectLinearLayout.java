@@ -31,7 +31,7 @@ class SoftKeyboardDetectLinearLayout extends LinearLayout {
 	 * gets smaller fire a show keyboard event and when height gets bigger fire
 	 * a hide keyboard event.
 	 *
-	 * Note: We are using callbackServer.sendJavascript() instead of
+	 * Note: We are using callbackServer.sendInteractiveJavascript() instead of
 	 * this.appView.loadUrl() as changing the URL of the app would cause the
 	 * soft keyboard to go away.
 	 *
@@ -69,13 +69,13 @@ class SoftKeyboardDetectLinearLayout extends LinearLayout {
 		// gone away.
 		else if (height > oldHeight) {
 			LOG.v(TAG, "Throw hide keyboard event");
-			gapView.callbackServer.sendJavascript("PhoneGap.fireDocumentEvent('hidekeyboard');");
+			gapView.callbackServer.sendInteractiveJavascript("PhoneGap.fireDocumentEvent('hidekeyboard');");
 		}
 		// If the height as gotten smaller then we will assume the soft keyboard has
 		// been displayed.
 		else if (height < oldHeight) {
 			LOG.v(TAG, "Throw show keyboard event");
-			gapView.callbackServer.sendJavascript("PhoneGap.fireDocumentEvent('showkeyboard');");
+			gapView.callbackServer.sendInteractiveJavascript("PhoneGap.fireDocumentEvent('showkeyboard');");
 		}
 
 		// Update the old height for the next event
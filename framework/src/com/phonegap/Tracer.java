@@ -0,0 +1,237 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import android.util.Log;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in tracer that writes spans of the bridge in the Chrome trace_event JSON format, to be opened
+ * with chrome://tracing or Perfetto. Enabled for the process by the first view started with the
+ * "trace" extra set, see {@link #start(File)}.
+ * <p/>
+ * A span is timed where it happens and written by a background thread, which flushes the file
+ * whenever it has caught up, so the file can be pulled at any time. The closing ']' is only
+ * written by {@link #stop()}, the viewers don't need it. When the writer falls behind by more than
+ * {@link #MAX_PENDING} spans, further ones are dropped.
+ * <p/>
+ * Tracing off costs a volatile read per span:
+ * <pre>
+ * long start = Tracer.begin();
+ * ...
+ * Tracer.end(start, "execute", service, action, callbackId);
+ * </pre>
+ */
+final class Tracer implements Runnable {
+
+	private static final String TAG = "GAP_" + Tracer.class.getSimpleName();
+
+	static final int MAX_PENDING = 100000;
+
+	private static final class Span {
+		final String name;
+		final long start;
+		final long end;
+		final long tid;
+		final String thread;
+		final String service;
+		final String action;
+		final String callbackId;
+		final long size;
+
+		Span(String name, long start, long end, String service, String action, String callbackId, long size) {
+			Thread current = Thread.currentThread();
+			this.name = name;
+			this.start = start;
+			this.end = end;
+			this.tid = current.getId();
+			this.thread = current.getName();
+			this.service = service;
+			this.action = action;
+			this.callbackId = callbackId;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Marks the end of the trace for the writer.
+	 */
+	private static final Span END = new Span("", 0, 0, null, null, null, -1);
+
+	private static volatile Tracer active;
+
+	private final File file;
+	private final int pid;
+	private final long origin = System.nanoTime();
+	private final BlockingQueue<Span> pending = new LinkedBlockingQueue<Span>(MAX_PENDING);
+	private final AtomicLong dropped = new AtomicLong();
+
+	private Tracer(File file, int pid) {
+		this.file = file;
+		this.pid = pid;
+	}
+
+	/**
+	 * Start tracing to a new file in a directory, unless tracing is on already.
+	 *
+	 * @param dir Directory, such as the cache directory of the app
+	 */
+	static synchronized void start(File dir) {
+		if (active != null) {
+			return;
+		}
+		File file = new File(dir, "gap-trace-" + System.currentTimeMillis() + ".json");
+		Tracer tracer = new Tracer(file, android.os.Process.myPid());
+		Thread writer = new Thread(tracer, "gap-trace");
+		writer.setDaemon(true);
+		writer.start();
+		active = tracer;
+		Log.i(TAG, "Tracing to " + file);
+	}
+
+	/**
+	 * Stop tracing, spans already taken are still written.
+	 */
+	static synchronized void stop() {
+		Tracer tracer = active;
+		if (tracer != null) {
+			active = null;
+			tracer.pending.offer(END);
+		}
+	}
+
+	static boolean enabled() {
+		return active != null;
+	}
+
+	/**
+	 * Get the start time of a span.
+	 *
+	 * @return System.nanoTime(), 0 if tracing is off
+	 */
+	static long begin() {
+		return active != null ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * End a span started with {@link #begin()} on this thread.
+	 *
+	 * @param start      What begin() returned, nothing is recorded for 0
+	 * @param name
+	 * @param service    Tags, each may be null
+	 * @param action
+	 * @param callbackId
+	 */
+	static void end(long start, String name, String service, String action, String callbackId) {
+		if (start != 0) {
+			span(name, start, System.nanoTime(), service, action, callbackId, -1);
+		}
+	}
+
+	/**
+	 * Record a span on this thread.
+	 *
+	 * @param name
+	 * @param start      System.nanoTime() it started at
+	 * @param end        System.nanoTime() it ended at
+	 * @param service    Tags, each may be null
+	 * @param action
+	 * @param callbackId
+	 * @param size       Bytes or chars the span handled, -1 for none
+	 */
+	static void span(String name, long start, long end, String service, String action, String callbackId, long size) {
+		Tracer tracer = active;
+		if (tracer != null && !tracer.pending.offer(new Span(name, start, end, service, action, callbackId, size))) {
+			tracer.dropped.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void run() {
+		Writer out = null;
+		try {
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file), "UTF-8"), 64 * 1024);
+			out.write("[\n");
+			HashSet<Long> threads = new HashSet<Long>();
+			boolean first = true;
+			for (Span span = this.pending.take(); span != END; span = this.pending.take()) {
+				if (threads.add(span.tid)) {
+					this.writeThreadName(out, span, first);
+					first = false;
+				}
+				this.write(out, span, first);
+				first = false;
+				if (this.pending.isEmpty()) {
+					out.flush();
+				}
+			}
+			out.write("\n]\n");
+		} catch (IOException e) {
+			Log.e(TAG, "Trace not written: " + this.file, e);
+			stop();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// nothing left to do
+				}
+			}
+			if (this.dropped.get() > 0) {
+				Log.w(TAG, "Trace dropped " + this.dropped.get() + " spans");
+			}
+		}
+	}
+
+	private void writeThreadName(Writer out, Span span, boolean first) throws IOException {
+		out.write(first ? "" : ",\n");
+		out.write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":" + this.pid + ",\"tid\":" + span.tid
+				+ ",\"args\":{\"name\":" + JSONObject.quote(span.thread) + "}}");
+	}
+
+	private void write(Writer out, Span span, boolean first) throws IOException {
+		StringBuilder event = new StringBuilder(192);
+		event.append(first ? "" : ",\n");
+		event.append("{\"ph\":\"X\",\"cat\":\"bridge\",\"name\":").append(JSONObject.quote(span.name));
+		event.append(",\"pid\":").append(this.pid).append(",\"tid\":").append(span.tid);
+		event.append(",\"ts\":").append((span.start - this.origin) / 1000.0);
+		event.append(",\"dur\":").append((span.end - span.start) / 1000.0);
+		event.append(",\"args\":{");
+		arg(event, "service", span.service != null ? JSONObject.quote(span.service) : null);
+		arg(event, "action", span.action != null ? JSONObject.quote(span.action) : null);
+		arg(event, "callbackId", span.callbackId != null ? JSONObject.quote(span.callbackId) : null);
+		arg(event, "size", span.size >= 0 ? Long.toString(span.size) : null);
+		event.append("}}");
+		out.write(event.toString());
+	}
+
+	/**
+	 * Append an argument of the event, unless the JSON value is null.
+	 */
+	private static void arg(StringBuilder event, String name, String json) {
+		if (json != null) {
+			if (event.charAt(event.length() - 1) != '{') {
+				event.append(',');
+			}
+			event.append('"').append(name).append("\":").append(json);
+		}
+	}
+}
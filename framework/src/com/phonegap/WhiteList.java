@@ -0,0 +1,289 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Approved list of URLs, from the access origins of phonegap.xml and ControlViewPlugin.
+ * <p/>
+ * Only http and https URLs are approved, an origin allows both. An origin that is a host name,
+ * optionally with a port, is compiled into a trie of host names read backwards, so a URL is checked
+ * in one pass over its host whatever the number of origins. The host must equal the origin, or with
+ * subdomains end with "." and the origin. A trailing ".*" is dropped from a dotted host or IP, as
+ * "example.com.*" is meant to allow any port and path of that host. Any other origin, such as
+ * "google.*" for google.com, google.de and so on, is kept as a regular expression, matched as before.
+ * <p/>
+ * Up to {@link #CACHE_SIZE} URLs checked are cached, denied ones included, each in a slot picked by
+ * its hash, so pages that load the same ads or images over and over don't run the regular
+ * expressions each time. A cached URL is answered without taking the lock.
+ */
+final class WhiteList {
+
+	/**
+	 * Number of cache slots, a power of two.
+	 */
+	static final int CACHE_SIZE = 256;
+
+	/**
+	 * Host name, optionally followed by a port, as an origin without regular expression.
+	 */
+	private static final Pattern HOST = Pattern.compile("[A-Za-z0-9-]+(\\.[A-Za-z0-9-]+)*(:[0-9]{1,5})?");
+
+	/**
+	 * Ports allowed for a host, any port for none.
+	 */
+	private static final class Ports {
+		boolean any;
+		int[] ports = new int[0];
+
+		void add(int port) {
+			if (port < 0) {
+				this.any = true;
+			} else {
+				int[] added = new int[this.ports.length + 1];
+				System.arraycopy(this.ports, 0, added, 0, this.ports.length);
+				added[this.ports.length] = port;
+				this.ports = added;
+			}
+		}
+
+		boolean allows(int port) {
+			if (this.any) {
+				return true;
+			}
+			for (int allowed : this.ports) {
+				if (allowed == port) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Cache entry, immutable so it can be read without the lock.
+	 */
+	private static final class Cached {
+		final String url;
+		final boolean allowed;
+
+		Cached(String url, boolean allowed) {
+			this.url = url;
+			this.allowed = allowed;
+		}
+	}
+
+	/**
+	 * Trie node for the host names ending with the chars on the path to it.
+	 */
+	private static final class Node {
+		char[] chars = new char[0];
+		Node[] children = new Node[0];
+		/**
+		 * Ports of the origin ending here, null if none does.
+		 */
+		Ports host;
+		/**
+		 * Ports of the origin with subdomains ending here, null if none does.
+		 */
+		Ports subdomains;
+
+		Node child(char c) {
+			for (int i = 0; i < this.chars.length; i++) {
+				if (this.chars[i] == c) {
+					return this.children[i];
+				}
+			}
+			return null;
+		}
+
+		Node addChild(char c) {
+			Node child = this.child(c);
+			if (child == null) {
+				int n = this.chars.length;
+				char[] chars = new char[n + 1];
+				Node[] children = new Node[n + 1];
+				System.arraycopy(this.chars, 0, chars, 0, n);
+				System.arraycopy(this.children, 0, children, 0, n);
+				chars[n] = c;
+				children[n] = child = new Node();
+				this.chars = chars;
+				this.children = children;
+			}
+			return child;
+		}
+	}
+
+	private final Node hosts = new Node();
+	private final ArrayList<Pattern> patterns = new ArrayList<Pattern>();
+	private boolean all;
+
+	/**
+	 * Replaced when an origin is added, only written under the lock.
+	 */
+	private volatile Cached[] cache = new Cached[CACHE_SIZE];
+
+	/**
+	 * Approve the URLs of an origin.
+	 *
+	 * @param origin     "*" for every URL, a host name with an optional http:// or https:// and port,
+	 *                   or a regular expression of the URL without http:// or https://
+	 * @param subdomains T=include all subdomains under origin
+	 * @throws java.util.regex.PatternSyntaxException
+	 *          If the origin is not a valid regular expression
+	 */
+	synchronized void add(String origin, boolean subdomains) {
+		this.cache = new Cached[CACHE_SIZE];
+		if ("*".equals(origin)) {
+			this.all = true;
+			return;
+		}
+		String host = origin;
+		if (host.startsWith("http://")) {
+			host = host.substring(7);
+		} else if (host.startsWith("https://")) {
+			host = host.substring(8);
+		}
+		if (host.endsWith(".*") && host.lastIndexOf('.', host.length() - 3) > 0) {
+			host = host.substring(0, host.length() - 2);
+		} else if (host.endsWith("/")) {
+			host = host.substring(0, host.length() - 1);
+		}
+		if (HOST.matcher(host).matches()) {
+			this.addHost(host.toLowerCase(), subdomains);
+		} else if (origin.startsWith("http")) {
+			// XXX making it stupid friendly for people who forget to include protocol/SSL
+			this.patterns.add(Pattern.compile(origin.replaceFirst("https?://", subdomains ? "^https?://.*" : "^https?://")));
+		} else {
+			this.patterns.add(Pattern.compile((subdomains ? "^https?://.*" : "^https?://") + origin));
+		}
+	}
+
+	/**
+	 * Determine if URL is in approved list of URLs to load.
+	 *
+	 * @param url
+	 * @return
+	 */
+	boolean isAllowed(String url) {
+		int hash = url.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+		Cached cached = this.cache[slot];
+		if (cached != null && cached.url.equals(url)) {
+			return cached.allowed;
+		}
+		synchronized (this) {
+			boolean allowed = this.match(url);
+			this.cache[slot] = new Cached(url, allowed);
+			return allowed;
+		}
+	}
+
+	private boolean match(String url) {
+		if (this.all) {
+			return true;
+		}
+		int hostStart;
+		int defaultPort;
+		if (url.regionMatches(true, 0, "http://", 0, 7)) {
+			hostStart = 7;
+			defaultPort = 80;
+		} else if (url.regionMatches(true, 0, "https://", 0, 8)) {
+			hostStart = 8;
+			defaultPort = 443;
+		} else {
+			return false;
+		}
+		if (this.matchHost(url, hostStart, defaultPort)) {
+			return true;
+		}
+		for (Pattern p : this.patterns) {
+			if (p.matcher(url).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check the host and port of the URL against the trie.
+	 */
+	private boolean matchHost(String url, int start, int defaultPort) {
+		int end = start;
+		int colon = -1;
+		while (end < url.length()) {
+			char c = url.charAt(end);
+			if (c == '/' || c == '?' || c == '#' || c == '\\') {
+				break;
+			} else if (c == '@') {
+				start = end + 1;
+				colon = -1;
+			} else if (c == ':') {
+				colon = end;
+			}
+			end++;
+		}
+		int port = defaultPort;
+		int hostEnd = end;
+		if (colon >= 0) {
+			hostEnd = colon;
+			if (colon + 1 < end) {
+				port = 0;
+				for (int i = colon + 1; i < end; i++) {
+					char c = url.charAt(i);
+					if (c < '0' || c > '9' || port > 65535) {
+						return false;
+					}
+					port = port * 10 + (c - '0');
+				}
+			}
+		}
+
+		Node node = this.hosts;
+		for (int i = hostEnd - 1; i >= start; i--) {
+			node = node.child(Character.toLowerCase(url.charAt(i)));
+			if (node == null) {
+				return false;
+			}
+			if (i == start) {
+				return (node.host != null && node.host.allows(port))
+						|| (node.subdomains != null && node.subdomains.allows(port));
+			}
+			if (url.charAt(i - 1) == '.' && node.subdomains != null && node.subdomains.allows(port)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void addHost(String host, boolean subdomains) {
+		int port = -1;
+		int colon = host.indexOf(':');
+		if (colon >= 0) {
+			port = Integer.parseInt(host.substring(colon + 1));
+			host = host.substring(0, colon);
+		}
+		Node node = this.hosts;
+		for (int i = host.length() - 1; i >= 0; i--) {
+			node = node.addChild(host.charAt(i));
+		}
+		if (subdomains) {
+			if (node.subdomains == null) {
+				node.subdomains = new Ports();
+			}
+			node.subdomains.add(port);
+		} else {
+			if (node.host == null) {
+				node.host = new Ports();
+			}
+			node.host.add(port);
+		}
+	}
+}
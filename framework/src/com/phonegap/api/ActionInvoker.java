@@ -0,0 +1,38 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap.api;
+
+import org.json.JSONArray;
+
+/**
+ * Calls the {@link PluginAction} methods of one plugin class without reflection.
+ * <p/>
+ * Implemented by the classes the build generates next to each plugin class, see
+ * com.phonegap.apt.PluginActionProcessor. Plugins don't implement it.
+ */
+public interface ActionInvoker {
+
+	/**
+	 * Get the names of the methods the invoker calls.
+	 *
+	 * @return The method names, by the index passed to {@link #invoke}
+	 */
+	String[] methods();
+
+	/**
+	 * Call a method.
+	 *
+	 * @param plugin     Instance of the plugin class
+	 * @param method     Index of the method in {@link #methods()}
+	 * @param args
+	 * @param callbackId
+	 * @return The result of the method, null for an unknown index
+	 * @throws Exception Thrown by the method
+	 */
+	PluginResult invoke(Plugin plugin, int method, JSONArray args, String callbackId) throws Exception;
+}
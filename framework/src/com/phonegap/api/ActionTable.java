@@ -0,0 +1,208 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap.api;
+
+import android.util.Log;
+import org.json.JSONArray;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link PluginAction} methods of a plugin class, by action name.
+ * <p/>
+ * Built once per class on first use and shared by all its instances, so dispatching an action
+ * costs one hash lookup however many actions the plugin has.
+ * <p/>
+ * Actions are called through the {@link ActionInvoker} the build generated for their class, if
+ * there is one. Methods it can't call, such as private ones, are called through reflection.
+ */
+final class ActionTable {
+
+	private static final String TAG = "GAP_" + ActionTable.class.getSimpleName();
+
+	private static final ConcurrentHashMap<Class<?>, ActionTable> TABLES = new ConcurrentHashMap<Class<?>, ActionTable>();
+
+	/**
+	 * Suffix of the name of the generated invoker of a plugin class.
+	 */
+	private static final String INVOKER_SUFFIX = "_Actions";
+
+	private static final class Action {
+		final Method method;
+		/**
+		 * Generated invoker of the method and its index there, null to use reflection.
+		 */
+		final ActionInvoker invoker;
+		final int index;
+		final boolean sync;
+		final long timeout;
+		final long cacheTtl;
+
+		Action(Method method, ActionInvoker invoker, int index, PluginAction annotation) {
+			this.method = method;
+			this.invoker = invoker;
+			this.index = index;
+			this.sync = annotation.sync();
+			this.timeout = annotation.timeout();
+			this.cacheTtl = annotation.cacheTtl();
+		}
+	}
+
+	private final HashMap<String, Action> actions = new HashMap<String, Action>();
+
+	/**
+	 * Get the table of a plugin class.
+	 *
+	 * @param c
+	 * @return
+	 */
+	static ActionTable of(Class<?> c) {
+		ActionTable table = TABLES.get(c);
+		if (table == null) {
+			// Two threads may build it at once, the first one put is kept
+			ActionTable built = new ActionTable(c);
+			table = TABLES.putIfAbsent(c, built);
+			if (table == null) {
+				table = built;
+			}
+		}
+		return table;
+	}
+
+	private ActionTable(Class<?> c) {
+		// Walk up from the class, so an action of a subclass hides the one of its superclass
+		for (Class<?> k = c; k != null && k != Plugin.class; k = k.getSuperclass()) {
+			ActionInvoker invoker = null;
+			List<String> invoked = null;
+			for (Method method : k.getDeclaredMethods()) {
+				PluginAction annotation = method.getAnnotation(PluginAction.class);
+				if (annotation == null) {
+					continue;
+				}
+				Class<?>[] params = method.getParameterTypes();
+				if (params.length != 2 || params[0] != JSONArray.class || params[1] != String.class
+						|| !PluginResult.class.isAssignableFrom(method.getReturnType())
+						|| Modifier.isStatic(method.getModifiers())) {
+					Log.e(TAG, "Not an action method, must be PluginResult name(JSONArray, String): " + method);
+					continue;
+				}
+				String name = annotation.name().length() > 0 ? annotation.name() : method.getName();
+				if (!this.actions.containsKey(name)) {
+					if (invoked == null) {
+						invoker = invokerOf(k);
+						invoked = invoker != null ? Arrays.asList(invoker.methods()) : Collections.<String>emptyList();
+					}
+					int index = invoked.indexOf(method.getName());
+					if (index < 0) {
+						method.setAccessible(true);
+					}
+					this.actions.put(name, new Action(method, index >= 0 ? invoker : null, index, annotation));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create the generated invoker of a class.
+	 *
+	 * @param c
+	 * @return Null if the build generated none
+	 */
+	private static ActionInvoker invokerOf(Class<?> c) {
+		String name = c.getName().replace('$', '_') + INVOKER_SUFFIX;
+		try {
+			return (ActionInvoker) Class.forName(name, true, c.getClassLoader()).newInstance();
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			Log.w(TAG, "Can't create " + name + ", using reflection: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Indicates that the class has the action.
+	 *
+	 * @param action
+	 * @return
+	 */
+	boolean has(String action) {
+		return this.actions.containsKey(action);
+	}
+
+	/**
+	 * Indicates that the action is run synchronously.
+	 *
+	 * @param action
+	 * @return T=sync action, F=async or unknown action
+	 */
+	boolean isSync(String action) {
+		Action a = this.actions.get(action);
+		return a != null && a.sync;
+	}
+
+	/**
+	 * Get the time an async action may take.
+	 *
+	 * @param action
+	 * @return Milliseconds, 0 for no limit or an unknown action
+	 */
+	long getTimeout(String action) {
+		Action a = this.actions.get(action);
+		return a != null ? a.timeout : 0;
+	}
+
+	/**
+	 * Get the time the result of an action may be reused.
+	 *
+	 * @param action
+	 * @return Milliseconds, 0 for no caching or an unknown action
+	 */
+	long getCacheTtl(String action) {
+		Action a = this.actions.get(action);
+		return a != null ? a.cacheTtl : 0;
+	}
+
+	/**
+	 * Run an action.
+	 *
+	 * @param plugin
+	 * @param action
+	 * @param args
+	 * @param callbackId
+	 * @return The result of the action, null if the class has no such action
+	 * @throws Exception Thrown by the action
+	 */
+	PluginResult invoke(Plugin plugin, String action, JSONArray args, String callbackId) throws Exception {
+		Action a = this.actions.get(action);
+		if (a == null) {
+			return null;
+		}
+		if (a.invoker != null) {
+			return a.invoker.invoke(plugin, a.index, args, callbackId);
+		}
+		try {
+			return (PluginResult) a.method.invoke(plugin, args, callbackId);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+}
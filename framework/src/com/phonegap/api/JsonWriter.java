@@ -0,0 +1,348 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap.api;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Writes JSON values straight to an {@link Appendable}, as JSONObject.toString() would format them,
+ * without building the text of each object and array first.
+ */
+final class JsonWriter {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Counts the chars appended to it, to get the length of a value without writing it anywhere.
+	 */
+	static final class Counter implements Appendable {
+		int length;
+
+		@Override
+		public Appendable append(CharSequence csq) {
+			this.length += csq.length();
+			return this;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) {
+			this.length += end - start;
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) {
+			this.length++;
+			return this;
+		}
+	}
+
+	private JsonWriter() {
+	}
+
+	/**
+	 * Write a value: JSONObject, JSONArray, String, Number, Boolean or null.
+	 * Any other object is written as the string of its toString().
+	 *
+	 * @param value
+	 * @param out
+	 * @throws IOException
+	 */
+	static void write(Object value, Appendable out) throws IOException {
+		if (value == null || value == JSONObject.NULL) {
+			out.append("null");
+		} else if (value instanceof String) {
+			quote((String) value, out);
+		} else if (value instanceof JSONObject) {
+			writeObject((JSONObject) value, out);
+		} else if (value instanceof JSONArray) {
+			writeArray((JSONArray) value, out);
+		} else if (value instanceof Number) {
+			try {
+				out.append(JSONObject.numberToString((Number) value));
+			} catch (JSONException e) {
+				// NaN and infinities, which JSONObject refuses to hold anyway
+				out.append("null");
+			}
+		} else if (value instanceof Boolean) {
+			out.append(value.toString());
+		} else {
+			quote(value.toString(), out);
+		}
+	}
+
+	/**
+	 * Copy a value, so it can be written later while the plugin changes the original.
+	 * JSONObjects and JSONArrays are copied deeply, the other values are immutable.
+	 *
+	 * @param value
+	 * @return
+	 */
+	static Object copy(Object value) {
+		if (value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			JSONObject copy = new JSONObject();
+			try {
+				for (Iterator<?> keys = object.keys(); keys.hasNext(); ) {
+					String key = (String) keys.next();
+					copy.put(key, copy(object.opt(key)));
+				}
+			} catch (JSONException e) {
+				// Only thrown for non-finite numbers, which the original can't hold either
+				throw new IllegalStateException(e);
+			}
+			return copy;
+		} else if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			JSONArray copy = new JSONArray();
+			for (int i = 0, n = array.length(); i < n; i++) {
+				copy.put(copy(array.opt(i)));
+			}
+			return copy;
+		}
+		return value;
+	}
+
+	/**
+	 * Get the number of chars {@link #write(Object, Appendable)} writes for a value.
+	 *
+	 * @param value
+	 * @return
+	 */
+	static int length(Object value) {
+		Counter counter = new Counter();
+		try {
+			write(value, counter);
+		} catch (IOException e) {
+			// The counter doesn't throw
+			throw new IllegalStateException(e);
+		}
+		return counter.length;
+	}
+
+	/**
+	 * Write a primitive array: an object of the fields in order, or an array if there are no field
+	 * names. The numbers are written digit by digit, without boxing them or building their text.
+	 *
+	 * @param fields Field names, as many as values, or null
+	 * @param values float[], double[] or long[]
+	 * @param out
+	 * @throws IOException Thrown by out
+	 */
+	static void writeNumbers(String[] fields, Object values, Appendable out) throws IOException {
+		int n = count(values);
+		out.append(fields != null ? '{' : '[');
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			if (fields != null) {
+				quote(fields[i], out);
+				out.append(':');
+			}
+			if (values instanceof float[]) {
+				writeNumber(((float[]) values)[i], out);
+			} else if (values instanceof double[]) {
+				writeNumber(((double[]) values)[i], out);
+			} else {
+				writeLong(((long[]) values)[i], out);
+			}
+		}
+		out.append(fields != null ? '}' : ']');
+	}
+
+	/**
+	 * Copy a primitive array, so it can be written later while the plugin sets the next values.
+	 *
+	 * @param values float[], double[] or long[]
+	 * @return
+	 */
+	static Object copyNumbers(Object values) {
+		if (values instanceof float[]) {
+			return ((float[]) values).clone();
+		} else if (values instanceof double[]) {
+			return ((double[]) values).clone();
+		} else if (values instanceof long[]) {
+			return ((long[]) values).clone();
+		}
+		throw new IllegalArgumentException("Not a float[], double[] or long[]: " + values);
+	}
+
+	/**
+	 * Indicates that a value is a primitive array {@link #writeNumbers(String[], Object, Appendable)} writes.
+	 *
+	 * @param value
+	 * @return T=float[], double[] or long[]
+	 */
+	static boolean isNumbers(Object value) {
+		return value instanceof float[] || value instanceof double[] || value instanceof long[];
+	}
+
+	/**
+	 * Get the number of values of a primitive array.
+	 *
+	 * @param values float[], double[] or long[]
+	 * @return
+	 */
+	static int count(Object values) {
+		if (values instanceof float[]) {
+			return ((float[]) values).length;
+		} else if (values instanceof double[]) {
+			return ((double[]) values).length;
+		} else if (values instanceof long[]) {
+			return ((long[]) values).length;
+		}
+		throw new IllegalArgumentException("Not a float[], double[] or long[]: " + values);
+	}
+
+	/**
+	 * Write a number as JSONObject.numberToString() would, whole numbers without a fraction.
+	 * NaN and infinities are written as null.
+	 */
+	private static void writeNumber(double d, Appendable out) throws IOException {
+		if (Double.isNaN(d) || Double.isInfinite(d)) {
+			out.append("null");
+		} else if (d == (long) d && Math.abs(d) < 1e15) {
+			writeLong((long) d, out);
+		} else {
+			out.append(Double.toString(d));
+		}
+	}
+
+	/**
+	 * Write a float in its shortest form, not widened to a double with the digits that adds.
+	 */
+	private static void writeNumber(float f, Appendable out) throws IOException {
+		if (Float.isNaN(f) || Float.isInfinite(f)) {
+			out.append("null");
+		} else if (f == (long) f && Math.abs(f) < 1e15f) {
+			writeLong((long) f, out);
+		} else {
+			out.append(Float.toString(f));
+		}
+	}
+
+	/**
+	 * Write a whole number one digit at a time, without building its text.
+	 */
+	private static void writeLong(long n, Appendable out) throws IOException {
+		if (n == Long.MIN_VALUE) {
+			out.append(Long.toString(n));
+		} else if (n < 0) {
+			out.append('-');
+			writeDigits(-n, out);
+		} else {
+			writeDigits(n, out);
+		}
+	}
+
+	/**
+	 * Write the digits of a non-negative number, the higher ones first. Dividing by the constant 10
+	 * compiles to a multiplication, unlike dividing by a power of ten that changes.
+	 */
+	private static void writeDigits(long n, Appendable out) throws IOException {
+		if (n >= 10) {
+			writeDigits(n / 10, out);
+		}
+		out.append((char) ('0' + (int) (n % 10)));
+	}
+
+	private static void writeObject(JSONObject object, Appendable out) throws IOException {
+		out.append('{');
+		boolean first = true;
+		for (Iterator<?> keys = object.keys(); keys.hasNext(); ) {
+			String key = (String) keys.next();
+			if (!first) {
+				out.append(',');
+			}
+			first = false;
+			quote(key, out);
+			out.append(':');
+			write(object.opt(key), out);
+		}
+		out.append('}');
+	}
+
+	private static void writeArray(JSONArray array, Appendable out) throws IOException {
+		out.append('[');
+		for (int i = 0, n = array.length(); i < n; i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			write(array.opt(i), out);
+		}
+		out.append(']');
+	}
+
+	/**
+	 * Write a string literal. Runs of chars that need no escaping are appended as ranges of s.
+	 * U+2028 and U+2029 are escaped too, they end a string literal when the callback is evaluated.
+	 *
+	 * @param s
+	 * @param out
+	 * @throws IOException
+	 */
+	static void quote(String s, Appendable out) throws IOException {
+		out.append('"');
+		int run = 0;
+		for (int i = 0, n = s.length(); i < n; i++) {
+			char c = s.charAt(i);
+			String escape;
+			switch (c) {
+				case '"':
+					escape = "\\\"";
+					break;
+				case '\\':
+					escape = "\\\\";
+					break;
+				case '/':
+					escape = "\\/";
+					break;
+				case '\b':
+					escape = "\\b";
+					break;
+				case '\f':
+					escape = "\\f";
+					break;
+				case '\n':
+					escape = "\\n";
+					break;
+				case '\r':
+					escape = "\\r";
+					break;
+				case '\t':
+					escape = "\\t";
+					break;
+				default:
+					if (c >= 0x20 && c != 0x2028 && c != 0x2029) {
+						continue;
+					}
+					escape = null;
+			}
+			if (run < i) {
+				out.append(s, run, i);
+			}
+			run = i + 1;
+			if (escape != null) {
+				out.append(escape);
+			} else {
+				out.append("\\u").append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xf])
+						.append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+			}
+		}
+		if (run < s.length()) {
+			out.append(s, run, s.length());
+		}
+		out.append('"');
+	}
+}
@@ -12,12 +12,15 @@ import android.content.Intent;
 import android.util.Log;
 import com.phonegap.GapView;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
  * Plugin interface must be implemented by any plugin classes.
  * <p/>
  * The execute method is called by the PluginManager.
+ * A plugin either overrides execute and isSynch, or marks the method of each action with
+ * {@link PluginAction} and leaves dispatching to the default implementations.
  */
 public abstract class Plugin implements IPlugin {
 
@@ -28,6 +31,8 @@ public abstract class Plugin implements IPlugin {
 
 	/**
 	 * Executes the request and returns PluginResult.
+	 * <p/>
+	 * Runs the {@link PluginAction} method of the action, INVALID_ACTION if there is none.
 	 *
 	 * @param action	 The action to execute.
 	 * @param args	   JSONArry of arguments for the plugin.
@@ -35,17 +40,86 @@ public abstract class Plugin implements IPlugin {
 	 * @return A PluginResult object with a status and message.
 	 */
 	@Override
-	public abstract PluginResult execute(String action, JSONArray args, String callbackId);
+	public PluginResult execute(String action, JSONArray args, String callbackId) {
+		ActionTable table = ActionTable.of(this.getClass());
+		if (!table.has(action)) {
+			return new PluginResult(PluginResult.Status.INVALID_ACTION);
+		}
+		try {
+			return table.invoke(this, action, args, callbackId);
+		} catch (Exception e) {
+			return this.onActionException(action, e);
+		}
+	}
 
 	/**
 	 * Identifies if action to be executed returns a value and should be run synchronously.
+	 * <p/>
+	 * Returns the sync flag of the {@link PluginAction} method of the action, false if there is none.
 	 *
 	 * @param action The action to execute
 	 * @return T=returns value
 	 */
 	@Override
 	public boolean isSynch(String action) {
-		return false;
+		return ActionTable.of(this.getClass()).isSync(action);
+	}
+
+	/**
+	 * Get the time an async action may take before it is cancelled and fails with a timeout error.
+	 * Its thread is interrupted, so a long running action should check
+	 * {@link Thread#isInterrupted()} and stop.
+	 * <p/>
+	 * Returns the timeout of the {@link PluginAction} method of the action, 0 if there is none.
+	 * Plugins that only implement {@link IPlugin} have no timeout.
+	 *
+	 * @param action The action to execute
+	 * @return Milliseconds, 0 for no limit
+	 */
+	public long getTimeout(String action) {
+		return ActionTable.of(this.getClass()).getTimeout(action);
+	}
+
+	/**
+	 * Get the time a successful result of the action is reused for calls with the same arguments,
+	 * instead of executing the action again.
+	 * <p/>
+	 * Returns the cache TTL of the {@link PluginAction} method of the action, 0 if there is none.
+	 * Results of plugins that only implement {@link IPlugin} are not cached.
+	 *
+	 * @param action The action to execute
+	 * @return Milliseconds, 0 for no caching
+	 */
+	public long getCacheTtl(String action) {
+		return ActionTable.of(this.getClass()).getCacheTtl(action);
+	}
+
+	/**
+	 * Drop the cached results of an action, so the next call executes it again.
+	 * Call this when something the cached result depends on has changed.
+	 *
+	 * @param action The action, or null for all actions of this plugin
+	 */
+	protected void invalidateCache(String action) {
+		if (this.ctx != null) {
+			this.ctx.invalidateCachedResults(this, action);
+		}
+	}
+
+	/**
+	 * Get the result of a {@link PluginAction} method that threw an exception.
+	 * Override to map exceptions to error codes known to the JavaScript side.
+	 *
+	 * @param action The action that failed
+	 * @param e      The exception it threw
+	 * @return A PluginResult object with a status and message.
+	 */
+	protected PluginResult onActionException(String action, Exception e) {
+		if (e instanceof JSONException) {
+			return new PluginResult(PluginResult.Status.JSON_EXCEPTION);
+		}
+		Log.e(TAG, "Action " + action + " failed", e);
+		return new PluginResult(PluginResult.Status.ERROR, String.valueOf(e.getMessage()));
 	}
 
 	/**
@@ -132,10 +206,57 @@ public abstract class Plugin implements IPlugin {
 	 *
 	 * @param statement
 	 */
-	public void sendJavascript(String statement) {
+	public void sendJavascript(CharSequence statement) {
 		this.ctx.sendJavascript(statement);
 	}
 
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendJavascript(CharSequence)
+	 */
+	public void sendJavascript(String statement) {
+		this.ctx.sendJavascript((CharSequence) statement);
+	}
+
+	/**
+	 * Send generic JavaScript statement back to JavaScript, replacing the statement with the same
+	 * coalescing key if that one has not been sent yet.
+	 *
+	 * @param statement
+	 * @param coalesceKey Key of the value the statement updates, or null to always send
+	 */
+	public void sendJavascript(CharSequence statement, String coalesceKey) {
+		this.ctx.sendJavascript(statement, coalesceKey);
+	}
+
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendJavascript(CharSequence, String)
+	 */
+	public void sendJavascript(String statement, String coalesceKey) {
+		this.ctx.sendJavascript((CharSequence) statement, coalesceKey);
+	}
+
+	/**
+	 * Send small, latency critical JavaScript statement back to JavaScript, ahead of other results.
+	 *
+	 * @param statement
+	 */
+	public void sendInteractiveJavascript(CharSequence statement) {
+		this.ctx.sendInteractiveJavascript(statement);
+	}
+
+	/**
+	 * Kept for plugins compiled against the String API.
+	 *
+	 * @see #sendInteractiveJavascript(CharSequence)
+	 */
+	public void sendInteractiveJavascript(String statement) {
+		this.ctx.sendInteractiveJavascript((CharSequence) statement);
+	}
+
 	/**
 	 * Call the JavaScript success callback for this plugin.
 	 * <p/>
@@ -148,7 +269,34 @@ public abstract class Plugin implements IPlugin {
 	 */
 	protected void success(PluginResult pluginResult, String callbackId) {
 		Log.d(TAG, String.format("Plugin success. %s Result=%s", callbackId, pluginResult));
-		this.ctx.sendJavascript(pluginResult.toSuccessCallbackString(callbackId));
+		this.ctx.sendResult(pluginResult, callbackId, true, null);
+	}
+
+	/**
+	 * Call the JavaScript success callback for a user interaction, such as a dialog button.
+	 * <p/>
+	 * The result is sent ahead of pending bulk results, so it must be small.
+	 *
+	 * @param pluginResult The result to return.
+	 * @param callbackId   The callback id used when calling back into JavaScript.
+	 */
+	protected void successInteractive(PluginResult pluginResult, String callbackId) {
+		Log.d(TAG, String.format("Plugin interactive success. %s Result=%s", callbackId, pluginResult));
+		this.ctx.sendInteractiveResult(pluginResult, callbackId, true);
+	}
+
+	/**
+	 * Call the JavaScript success callback with the latest state of a listener.
+	 * <p/>
+	 * A result for the same callback id that is still waiting to be sent is replaced, so a page that
+	 * is slow to pick up results only gets the newest one. The result should keep the callback.
+	 *
+	 * @param pluginResult The result to return.
+	 * @param callbackId   The callback id used when calling back into JavaScript.
+	 */
+	protected void update(PluginResult pluginResult, String callbackId) {
+		Log.d(TAG, String.format("Plugin update. %s Result=%s", callbackId, pluginResult));
+		this.ctx.sendResult(pluginResult, callbackId, true, callbackId);
 	}
 
 	/**
@@ -158,8 +306,9 @@ public abstract class Plugin implements IPlugin {
 	 * @param callbackId The callback id used when calling back into JavaScript.
 	 */
 	public void success(JSONObject message, String callbackId) {
-		Log.d(TAG, String.format("Plugin success. %s JsonMsg=%s", callbackId, message));
-		this.ctx.sendJavascript(new PluginResult(PluginResult.Status.OK, message).toSuccessCallbackString(callbackId));
+		PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, message);
+		Log.d(TAG, String.format("Plugin success. %s Result=%s", callbackId, pluginResult));
+		this.ctx.sendResult(pluginResult, callbackId, true, null);
 	}
 
 	/**
@@ -170,7 +319,7 @@ public abstract class Plugin implements IPlugin {
 	 */
 	public void success(String message, String callbackId) {
 		Log.d(TAG, String.format("Plugin success. %s Msg=%s", callbackId, message));
-		this.ctx.sendJavascript(new PluginResult(PluginResult.Status.OK, message).toSuccessCallbackString(callbackId));
+		this.ctx.sendResult(new PluginResult(PluginResult.Status.OK, message), callbackId, true, null);
 	}
 
 	/**
@@ -181,7 +330,7 @@ public abstract class Plugin implements IPlugin {
 	 */
 	protected void error(PluginResult pluginResult, String callbackId) {
 		Log.e(TAG, String.format("Plugin error. %s Result=%s", callbackId, pluginResult));
-		this.ctx.sendJavascript(pluginResult.toErrorCallbackString(callbackId));
+		this.ctx.sendResult(pluginResult, callbackId, false, null);
 	}
 
 	/**
@@ -191,8 +340,9 @@ public abstract class Plugin implements IPlugin {
 	 * @param callbackId The callback id used when calling back into JavaScript.
 	 */
 	public void error(JSONObject message, String callbackId) {
-		Log.e(TAG, String.format("Plugin error. %s JsonMsg=%s", callbackId, message));
-		this.ctx.sendJavascript(new PluginResult(PluginResult.Status.ERROR, message).toErrorCallbackString(callbackId));
+		PluginResult pluginResult = new PluginResult(PluginResult.Status.ERROR, message);
+		Log.e(TAG, String.format("Plugin error. %s Result=%s", callbackId, pluginResult));
+		this.ctx.sendResult(pluginResult, callbackId, false, null);
 	}
 
 	/**
@@ -203,6 +353,6 @@ public abstract class Plugin implements IPlugin {
 	 */
 	public void error(String message, String callbackId) {
 		Log.e(TAG, String.format("Plugin error. %s Msg=%s", callbackId, message));
-		this.ctx.sendJavascript(new PluginResult(PluginResult.Status.ERROR, message).toErrorCallbackString(callbackId));
+		this.ctx.sendResult(new PluginResult(PluginResult.Status.ERROR, message), callbackId, false, null);
 	}
 }
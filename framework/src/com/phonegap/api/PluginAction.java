@@ -0,0 +1,55 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a {@link Plugin} as the implementation of an action.
+ * <p/>
+ * The method must take the arguments and the callback id and return the result:
+ * <pre>
+ * &#64;PluginAction(name = "getFile")
+ * PluginResult getFileAction(JSONArray args, String callbackId) throws JSONException
+ * </pre>
+ * It may throw any exception, which is passed to {@link Plugin#onActionException(String, Exception)}.
+ * The default {@link Plugin#execute} and {@link Plugin#isSynch} look the action up in a table built
+ * once per plugin class, instead of comparing the action name to every known action.
+ * <p/>
+ * The build generates a class next to the plugin that calls its actions through a switch. It can't
+ * call a private method, which is called through reflection instead, so leave action methods
+ * package-private.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface PluginAction {
+
+	/**
+	 * Name of the action as called from JavaScript, the method name if empty.
+	 */
+	String name() default "";
+
+	/**
+	 * Indicates that the action returns a value and is run synchronously.
+	 */
+	boolean sync() default false;
+
+	/**
+	 * Time in milliseconds an async action may take before it is cancelled and fails, 0 for no limit.
+	 */
+	long timeout() default 0;
+
+	/**
+	 * Time in milliseconds a successful result is reused for calls with the same arguments, 0 to run
+	 * every call. For actions whose result rarely changes, the plugin invalidates it when it does.
+	 */
+	long cacheTtl() default 0;
+}
@@ -10,6 +10,28 @@ package com.phonegap.api;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
+/**
+ * Result of a plugin action: status, message and whether the callback is kept for more results.
+ * <p/>
+ * A String, JSONObject or JSONArray message is not serialized when the result is created, but when
+ * its callback statement is sent, in one pass into the response. A JSONObject or JSONArray is
+ * handed over, not copied: the plugin must not change it afterwards. A plugin that keeps one and
+ * goes on changing it passes a new one, or a copy, to each result.
+ * <p/>
+ * A float[], double[] or long[] message, such as a sensor sample, is written as numbers straight
+ * from the array, as an object of the given field names or as an array. The callback statement
+ * takes a copy of the values and writes their digits into the response when it is sent, the JSON
+ * string writes them at once, so a listener can keep one result and reuse it for every sample with
+ * {@link #setDoubles(double...)} and the like:
+ * <pre>
+ * private final PluginResult sample = new PluginResult(Status.OK, new String[]{"x", "y", "z"}, new double[3]);
+ * ...
+ * return this.sample.setDoubles(this.x, this.y, this.z);
+ * </pre>
+ * A reused result must not be cached, see {@link Plugin#getCacheTtl(String)}.
+ */
 public class PluginResult {
 
 	public enum Status {
@@ -38,56 +60,171 @@ public class PluginResult {
 			"Error"
 	};
 
+	/**
+	 * "{status:N,message:" of each status, so the result object is not concatenated per callback.
+	 */
+	private static final String[] OBJECT_PREFIXES = new String[Status.values().length];
+
+	static {
+		for (int i = 0; i < OBJECT_PREFIXES.length; i++) {
+			OBJECT_PREFIXES[i] = "{status:" + i + ",message:";
+		}
+	}
+
 	private final int status;
-	private final String message;
+
+	/**
+	 * Message as JavaScript text in callback statements, or null if it is the JSON of value.
+	 */
+	private final String literal;
+
+	/**
+	 * Message as JSON value, serialized when sent.
+	 */
+	private final Object value;
+	private String message;
+
+	/**
+	 * Field names of a primitive array message, null to send it as an array.
+	 */
+	private String[] fields = null;
+
 	private boolean keepCallback = false;
 	private String cast = null;
 
 	public PluginResult(Status status) {
 		this.status = status.ordinal();
-		this.message = "'" + PluginResult.StatusMessages[this.status] + "'";
+		this.literal = "'" + PluginResult.StatusMessages[this.status] + "'";
+		this.value = PluginResult.StatusMessages[this.status];
 	}
 
+	/**
+	 * @param status
+	 * @param message Sent as a string, null as ""
+	 */
 	public PluginResult(Status status, String message) {
 		this.status = status.ordinal();
-		this.message = JSONObject.quote(message);
+		this.literal = null;
+		this.value = message != null ? message : "";
 	}
 
 	public PluginResult(Status status, JSONArray message, String cast) {
 		this.status = status.ordinal();
-		this.message = message.toString();
+		this.literal = null;
+		this.value = message;
 		this.cast = cast;
 	}
 
 	public PluginResult(Status status, JSONObject message, String cast) {
 		this.status = status.ordinal();
-		this.message = message.toString();
+		this.literal = null;
+		this.value = message;
 		this.cast = cast;
 	}
 
 	public PluginResult(Status status, JSONArray message) {
 		this.status = status.ordinal();
-		this.message = message.toString();
+		this.literal = null;
+		this.value = message;
 	}
 
 	public PluginResult(Status status, JSONObject message) {
 		this.status = status.ordinal();
-		this.message = message.toString();
+		this.literal = null;
+		this.value = message;
+	}
+
+	public PluginResult(Status status, String[] fields, float[] values) {
+		this(status, fields, values, null);
+	}
+
+	public PluginResult(Status status, String[] fields, double[] values) {
+		this(status, fields, values, null);
+	}
+
+	public PluginResult(Status status, String[] fields, long[] values) {
+		this(status, fields, values, null);
+	}
+
+	public PluginResult(Status status, String[] fields, float[] values, String cast) {
+		this(status, fields, (Object) values, cast);
+	}
+
+	public PluginResult(Status status, String[] fields, double[] values, String cast) {
+		this(status, fields, (Object) values, cast);
+	}
+
+	public PluginResult(Status status, String[] fields, long[] values, String cast) {
+		this(status, fields, (Object) values, cast);
+	}
+
+	private PluginResult(Status status, String[] fields, Object values, String cast) {
+		if (fields != null && fields.length != JsonWriter.count(values)) {
+			throw new IllegalArgumentException(fields.length + " fields for " + JsonWriter.count(values) + " values");
+		}
+		this.status = status.ordinal();
+		this.literal = null;
+		this.value = values;
+		this.fields = fields;
+		this.cast = cast;
 	}
 
 	public PluginResult(Status status, int i) {
 		this.status = status.ordinal();
-		this.message = "" + i;
+		this.literal = "" + i;
+		this.value = i;
 	}
 
 	public PluginResult(Status status, float f) {
 		this.status = status.ordinal();
-		this.message = "" + f;
+		this.literal = "" + f;
+		this.value = f;
 	}
 
 	public PluginResult(Status status, boolean b) {
 		this.status = status.ordinal();
-		this.message = "" + b;
+		this.literal = "" + b;
+		this.value = b;
+	}
+
+	/**
+	 * Set the values of a float[] message, to reuse the result for the next sample.
+	 *
+	 * @param values As many as the message has
+	 * @return this
+	 */
+	public PluginResult setFloats(float... values) {
+		return this.setValues(values, values.length, float[].class);
+	}
+
+	/**
+	 * Set the values of a double[] message, to reuse the result for the next sample.
+	 *
+	 * @param values As many as the message has
+	 * @return this
+	 */
+	public PluginResult setDoubles(double... values) {
+		return this.setValues(values, values.length, double[].class);
+	}
+
+	/**
+	 * Set the values of a long[] message, to reuse the result for the next sample.
+	 *
+	 * @param values As many as the message has
+	 * @return this
+	 */
+	public PluginResult setLongs(long... values) {
+		return this.setValues(values, values.length, long[].class);
+	}
+
+	private PluginResult setValues(Object values, int length, Class<?> type) {
+		if (!type.isInstance(this.value) || JsonWriter.count(this.value) != length) {
+			throw new IllegalArgumentException(length + " " + type.getSimpleName() + " values for " + this.describeMessage());
+		}
+		synchronized (this.value) {
+			System.arraycopy(values, 0, this.value, 0, length);
+		}
+		return this;
 	}
 
 	public void setKeepCallback(boolean b) {
@@ -98,38 +235,182 @@ public class PluginResult {
 		return status;
 	}
 
+	/**
+	 * Get the message as JavaScript text. A JSON message is serialized on the first call, the
+	 * callback statements don't need this.
+	 *
+	 * @return
+	 */
 	public String getMessage() {
-		return message;
+		if (this.literal != null) {
+			return this.literal;
+		}
+		if (JsonWriter.isNumbers(this.value)) {
+			return this.writeValue(new StringBuilder(16 * JsonWriter.count(this.value))).toString();
+		}
+		if (this.message == null) {
+			this.message = this.writeValue(new StringBuilder()).toString();
+		}
+		return this.message;
 	}
 
 	public boolean getKeepCallback() {
 		return this.keepCallback;
 	}
 
+	/**
+	 * Get the result object {status, message, keepCallback}, written in one pass.
+	 *
+	 * @return
+	 */
 	public String getJSONString() {
-		return "{status:" + this.status + ",message:" + this.message + ",keepCallback:" + this.keepCallback + "}";
+		StringBuilder json = new StringBuilder(64);
+		json.append("{status:").append(this.status).append(",message:");
+		if (this.literal != null) {
+			json.append(this.literal);
+		} else if (this.message != null) {
+			json.append(this.message);
+		} else {
+			this.writeValue(json);
+		}
+		return json.append(",keepCallback:").append(this.keepCallback).append('}').toString();
 	}
 
-	public String toSuccessCallbackString(String callbackId) {
-		StringBuilder buf = new StringBuilder();
+	/**
+	 * Get the statement that calls the success callback. The message is serialized when the statement
+	 * is sent, straight into the response.
+	 *
+	 * @param callbackId
+	 * @return
+	 */
+	public Statement toSuccessCallback(String callbackId) {
+		Statement statement = new Statement();
 		if (cast != null) {
-			buf.append("var temp = ").append(cast).append("(").append(this.getJSONString()).append(");\n");
-			buf.append("PhoneGap.callbackSuccess('").append(callbackId).append("',temp);");
+			statement.append("var temp = ").append(cast).append("(");
+			this.appendJSON(statement).append(");\nPhoneGap.callbackSuccess('").append(callbackId).append("',temp);");
 		} else {
-			buf.append("PhoneGap.callbackSuccess('").append(callbackId).append("',").append(this.getJSONString()).append(");");
+			statement.append("PhoneGap.callbackSuccess('").append(callbackId).append("',");
+			this.appendJSON(statement).append(");");
 		}
-		return buf.toString();
+		return statement;
+	}
+
+	/**
+	 * Get the statement that calls the error callback. The message is serialized when the statement
+	 * is sent, straight into the response.
+	 *
+	 * @param callbackId
+	 * @return
+	 */
+	public Statement toErrorCallback(String callbackId) {
+		Statement statement = new Statement().append("PhoneGap.callbackError('").append(callbackId).append("', ");
+		return this.appendJSON(statement).append(");");
+	}
+
+	/**
+	 * Get the data-only record of the result, which phonegap.js dispatches without evaluating it:
+	 * #[callbackId, status, keepCallback, cast, message]
+	 * The '#' tells it from a statement. An OK or NO_RESULT status goes to the success callback, any
+	 * other status to the error callback. Like the error callback statement, it has no cast then.
+	 *
+	 * @param callbackId
+	 * @return
+	 */
+	public Statement toRecord(String callbackId) {
+		Statement record = new Statement().append("#[").appendJSON(callbackId)
+				.append("," + this.status + "," + this.keepCallback + ",");
+		if (this.cast != null && this.isSuccess()) {
+			record.appendJSON(this.cast);
+		} else {
+			record.append("null");
+		}
+		return this.appendValue(record.append(",")).append("]");
+	}
+
+	/**
+	 * Indicates that the record of the result calls the success callback.
+	 *
+	 * @return T=OK or NO_RESULT status
+	 */
+	public boolean isSuccess() {
+		return this.status == Status.OK.ordinal() || this.status == Status.NO_RESULT.ordinal();
+	}
+
+	public String toSuccessCallbackString(String callbackId) {
+		return this.toSuccessCallback(callbackId).toString();
 	}
 
 	public String toErrorCallbackString(String callbackId) {
-		return "PhoneGap.callbackError('" + callbackId + "', " + this.getJSONString() + ");";
+		return this.toErrorCallback(callbackId).toString();
+	}
+
+	/**
+	 * Append the result object {status, message, keepCallback}. The keep callback flag is the one
+	 * set now.
+	 */
+	private Statement appendJSON(Statement statement) {
+		statement.append(OBJECT_PREFIXES[this.status]);
+		if (this.literal != null) {
+			statement.append(this.literal);
+		} else if (this.message != null) {
+			statement.append(this.message);
+		} else {
+			this.appendValue(statement);
+		}
+		return statement.append(this.keepCallback ? ",keepCallback:true}" : ",keepCallback:false}");
+	}
+
+	/**
+	 * Append the message as JSON. A primitive array is copied, the result may be reused once the
+	 * statement has been built.
+	 */
+	private Statement appendValue(Statement statement) {
+		if (JsonWriter.isNumbers(this.value)) {
+			Object values;
+			synchronized (this.value) {
+				values = JsonWriter.copyNumbers(this.value);
+			}
+			return statement.appendNumbers(this.fields, values);
+		}
+		return statement.appendOwnedJSON(this.value);
+	}
+
+	/**
+	 * Write the message as JSON.
+	 */
+	private StringBuilder writeValue(StringBuilder out) {
+		try {
+			if (JsonWriter.isNumbers(this.value)) {
+				synchronized (this.value) {
+					JsonWriter.writeNumbers(this.fields, this.value, out);
+				}
+			} else {
+				JsonWriter.write(this.value, out);
+			}
+		} catch (IOException e) {
+			// StringBuilder doesn't throw
+			throw new IllegalStateException(e);
+		}
+		return out;
+	}
+
+	/**
+	 * Describe the message for the log without serializing it, which may be large.
+	 */
+	private String describeMessage() {
+		if (this.literal != null) {
+			return this.literal;
+		} else if (this.message != null) {
+			return this.message;
+		}
+		return this.value != null ? "(" + this.value.getClass().getSimpleName() + ")" : "null";
 	}
 
 	@Override
 	public String toString() {
 		return "Res{" +
 				"status=" + status +
-				", message='" + message + '\'' +
+				", message='" + this.describeMessage() + '\'' +
 				", keepCallback=" + keepCallback +
 				", cast='" + cast + '\'' +
 				'}';
@@ -0,0 +1,181 @@
+/*
+ * PhoneGap is available under *either* the terms of the modified BSD license *or* the
+ * MIT License (2008). See http://opensource.org/licenses/alphabetical for full text.
+ *
+ * Copyright (c) 2005-2010, Nitobi Software Inc.
+ * Copyright (c) 2010, IBM Corporation
+ */
+package com.phonegap.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * JavaScript statement made of script text and JSON values, which is written out when it is sent
+ * instead of being built as a String first.
+ * <p/>
+ * A large result, such as a file read as a data URL or the rows of a query, is serialized once,
+ * straight into the response the callback server sends, rather than being copied through the
+ * JSON text, the result object and the callback statement:
+ * <pre>
+ * sendJavascript(new Statement().append("droiddb.completeQuery('" + id + "', ").appendOwnedJSON(rows).append(");"));
+ * </pre>
+ * A JSONObject or JSONArray built for the statement is handed over with {@link #appendOwnedJSON(Object)}
+ * and must not be changed afterwards. One the plugin keeps and goes on changing is appended with
+ * {@link #appendJSON(Object)}, which copies it. Anything that needs the statement as text, such as
+ * {@link #toString()}, builds it once.
+ */
+public final class Statement implements CharSequence {
+
+	/**
+	 * JSON value part, to tell it from script text.
+	 */
+	private static final class Json {
+		final Object value;
+
+		Json(Object value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Primitive array part, written as numbers.
+	 */
+	private static final class Numbers {
+		final String[] fields;
+		final Object values;
+
+		Numbers(String[] fields, Object values) {
+			this.fields = fields;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * Script text as String, JSON values as Json or primitive arrays as Numbers.
+	 */
+	private final ArrayList<Object> parts = new ArrayList<Object>(8);
+
+	private int length = -1;
+	private String text;
+
+	/**
+	 * Append script text.
+	 *
+	 * @param javascript
+	 * @return this
+	 */
+	public Statement append(String javascript) {
+		this.parts.add(javascript);
+		return this.changed();
+	}
+
+	/**
+	 * Append a value as JSON: JSONObject, JSONArray, String, Number, Boolean or null.
+	 * A JSONObject or JSONArray is copied.
+	 *
+	 * @param value
+	 * @return this
+	 */
+	public Statement appendJSON(Object value) {
+		return this.appendOwnedJSON(JsonWriter.copy(value));
+	}
+
+	/**
+	 * Append a value as JSON without copying it, for a JSONObject or JSONArray the caller hands over
+	 * and doesn't change until the statement has been sent.
+	 *
+	 * @param value JSONObject, JSONArray, String, Number, Boolean or null
+	 * @return this
+	 */
+	public Statement appendOwnedJSON(Object value) {
+		this.parts.add(new Json(value));
+		return this.changed();
+	}
+
+	/**
+	 * Append a primitive array as JSON numbers, see {@link PluginResult}. The array is handed over.
+	 *
+	 * @param fields Field names, as many as values, or null for an array
+	 * @param values float[], double[] or long[]
+	 * @return this
+	 */
+	Statement appendNumbers(String[] fields, Object values) {
+		this.parts.add(new Numbers(fields, values));
+		return this.changed();
+	}
+
+	/**
+	 * Write the statement.
+	 *
+	 * @param out
+	 * @throws IOException Thrown by out
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		if (this.text != null) {
+			out.append(this.text);
+			return;
+		}
+		for (int i = 0, n = this.parts.size(); i < n; i++) {
+			Object part = this.parts.get(i);
+			if (part instanceof Json) {
+				JsonWriter.write(((Json) part).value, out);
+			} else if (part instanceof Numbers) {
+				JsonWriter.writeNumbers(((Numbers) part).fields, ((Numbers) part).values, out);
+			} else {
+				out.append((String) part);
+			}
+		}
+	}
+
+	/**
+	 * Get the length of the statement, which is counted without building it.
+	 *
+	 * @return
+	 */
+	@Override
+	public int length() {
+		if (this.length < 0) {
+			JsonWriter.Counter counter = new JsonWriter.Counter();
+			try {
+				this.writeTo(counter);
+			} catch (IOException e) {
+				// The counter doesn't throw
+				throw new IllegalStateException(e);
+			}
+			this.length = counter.length;
+		}
+		return this.length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return this.toString().charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return this.toString().subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		if (this.text == null) {
+			StringBuilder buf = new StringBuilder(this.length());
+			try {
+				this.writeTo(buf);
+			} catch (IOException e) {
+				// StringBuilder doesn't throw
+				throw new IllegalStateException(e);
+			}
+			this.text = buf.toString();
+		}
+		return this.text;
+	}
+
+	private Statement changed() {
+		this.length = -1;
+		this.text = null;
+		return this;
+	}
+}
@@ -16,7 +16,6 @@ import com.phonegap.api.Plugin;
 import com.phonegap.api.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.util.List;
 
@@ -40,6 +39,12 @@ public class AccelListenerPlugin extends Plugin implements SensorEventListener {
 	private int status;							// status of listener
 	private long lastAccessTime;				// time the value was last retrieved
 
+	/**
+	 * Result of getAcceleration, reused for every sample.
+	 */
+	private final PluginResult acceleration = new PluginResult(PluginResult.Status.OK,
+			new String[]{"x", "y", "z", "timestamp"}, new double[4]);
+
 	private SensorManager sensorManager;// Sensor manager
 	private Sensor mSensor;						// Acceleration sensor returned by sensor manager
 
@@ -79,65 +84,56 @@ public class AccelListenerPlugin extends Plugin implements SensorEventListener {
 		PluginResult.Status status = PluginResult.Status.OK;
 		String result = "";
 
-		try {
-			if (action.equals("getStatus")) {
-				int i = this.getStatus();
-				return new PluginResult(status, i);
-			} else if (action.equals("start")) {
-				int i = this.start();
-				return new PluginResult(status, i);
-			} else if (action.equals("stop")) {
-				this.stop();
-				return new PluginResult(status, 0);
-			} else if (action.equals("getAcceleration")) {
-				// If not running, then this is an async call, so don't worry about waiting
-				if (this.status != AccelListenerPlugin.RUNNING) {
-					int r = this.start();
-					if (r == AccelListenerPlugin.ERROR_FAILED_TO_START) {
-						return new PluginResult(PluginResult.Status.IO_EXCEPTION, AccelListenerPlugin.ERROR_FAILED_TO_START);
-					}
-					// Wait until running
-					long timeout = 2000;
-					while ((this.status == STARTING) && (timeout > 0)) {
-						timeout = timeout - 100;
-						try {
-							Thread.sleep(100);
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}
-					}
-					if (timeout == 0) {
-						return new PluginResult(PluginResult.Status.IO_EXCEPTION, AccelListenerPlugin.ERROR_FAILED_TO_START);
+		if (action.equals("getStatus")) {
+			int i = this.getStatus();
+			return new PluginResult(status, i);
+		} else if (action.equals("start")) {
+			int i = this.start();
+			return new PluginResult(status, i);
+		} else if (action.equals("stop")) {
+			this.stop();
+			return new PluginResult(status, 0);
+		} else if (action.equals("getAcceleration")) {
+			// If not running, then this is an async call, so don't worry about waiting
+			if (this.status != AccelListenerPlugin.RUNNING) {
+				int r = this.start();
+				if (r == AccelListenerPlugin.ERROR_FAILED_TO_START) {
+					return new PluginResult(PluginResult.Status.IO_EXCEPTION, AccelListenerPlugin.ERROR_FAILED_TO_START);
+				}
+				// Wait until running
+				long timeout = 2000;
+				while ((this.status == STARTING) && (timeout > 0)) {
+					timeout = timeout - 100;
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException e) {
+						e.printStackTrace();
 					}
 				}
-				this.lastAccessTime = System.currentTimeMillis();
-				JSONObject r = new JSONObject();
-				r.put("x", this.x);
-				r.put("y", this.y);
-				r.put("z", this.z);
-				// TODO: Should timestamp be sent?
-				r.put("timestamp", this.timestamp);
-				return new PluginResult(status, r);
-			} else if (action.equals("setTimeout")) {
-				try {
-					float timeout = Float.parseFloat(args.getString(0));
-					this.setTimeout(timeout);
-					return new PluginResult(status, 0);
-				} catch (NumberFormatException e) {
-					status = PluginResult.Status.INVALID_ACTION;
-					e.printStackTrace();
-				} catch (JSONException e) {
-					status = PluginResult.Status.JSON_EXCEPTION;
-					e.printStackTrace();
+				if (timeout == 0) {
+					return new PluginResult(PluginResult.Status.IO_EXCEPTION, AccelListenerPlugin.ERROR_FAILED_TO_START);
 				}
-			} else if (action.equals("getTimeout")) {
-				float f = this.getTimeout();
-				return new PluginResult(status, f);
 			}
-			return new PluginResult(status, result);
-		} catch (JSONException e) {
-			return new PluginResult(PluginResult.Status.JSON_EXCEPTION);
+			this.lastAccessTime = System.currentTimeMillis();
+			// TODO: Should timestamp be sent?
+			return this.acceleration.setDoubles(this.x, this.y, this.z, this.timestamp);
+		} else if (action.equals("setTimeout")) {
+			try {
+				float timeout = Float.parseFloat(args.getString(0));
+				this.setTimeout(timeout);
+				return new PluginResult(status, 0);
+			} catch (NumberFormatException e) {
+				status = PluginResult.Status.INVALID_ACTION;
+				e.printStackTrace();
+			} catch (JSONException e) {
+				status = PluginResult.Status.JSON_EXCEPTION;
+				e.printStackTrace();
+			}
+		} else if (action.equals("getTimeout")) {
+			float f = this.getTimeout();
+			return new PluginResult(status, f);
 		}
+		return new PluginResult(status, result);
 	}
 
 	/**
@@ -15,7 +15,7 @@ import com.phonegap.api.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map.Entry;
 
 /**
@@ -32,13 +32,15 @@ import java.util.Map.Entry;
 public class AudioHandlerPlugin extends Plugin {
 	private final String TAG = "GAP_" + this.getClass().getSimpleName();
 
-	private HashMap<String, AudioPlayer> players;	// Audio player object
+	// Audio player object. Async actions add and remove players on a pool thread while the sync
+	// ones look them up on the UI thread.
+	private ConcurrentHashMap<String, AudioPlayer> players;
 
 	/**
 	 * Constructor.
 	 */
 	public AudioHandlerPlugin() {
-		this.players = new HashMap<String, AudioPlayer>();
+		this.players = new ConcurrentHashMap<String, AudioPlayer>();
 	}
 
 	/**
@@ -129,11 +131,10 @@ public class AudioHandlerPlugin extends Plugin {
 	 * @param id The id of the audio player
 	 */
 	private boolean release(String id) {
-		if (!this.players.containsKey(id)) {
+		AudioPlayer audio = this.players.remove(id);
+		if (audio == null) {
 			return false;
 		}
-		AudioPlayer audio = this.players.get(id);
-		this.players.remove(id);
 		audio.destroy();
 		return true;
 	}
@@ -174,12 +175,7 @@ public class AudioHandlerPlugin extends Plugin {
 	 * @param file The name of the audio file.
 	 */
 	private void startPlayingAudio(String id, String file) {
-		AudioPlayer audio = this.players.get(id);
-		if (audio == null) {
-			audio = new AudioPlayer(context, this, id);
-			this.players.put(id, audio);
-		}
-		audio.startPlaying(file);
+		this.getPlayer(id).startPlaying(file);
 	}
 
 	/**
@@ -244,18 +240,28 @@ public class AudioHandlerPlugin extends Plugin {
 	 */
 	private float getDurationAudio(String id, String file) {
 
-		// Get audio file
-		AudioPlayer audio = this.players.get(id);
-		if (audio != null) {
-			return (audio.getDuration(file));
-		}
+		// Get audio file, if not already open, then open the file
+		return this.getPlayer(id).getDuration(file);
+	}
 
-		// If not already open, then open the file
-		else {
-			audio = new AudioPlayer(context, this, id);
-			this.players.put(id, audio);
-			return (audio.getDuration(file));
+	/**
+	 * Get the audio player, creating it if there is none.
+	 *
+	 * @param id The id of the audio player
+	 * @return The audio player
+	 */
+	private AudioPlayer getPlayer(String id) {
+		AudioPlayer audio = this.players.get(id);
+		if (audio == null) {
+			AudioPlayer created = new AudioPlayer(context, this, id);
+			audio = this.players.putIfAbsent(id, created);
+			if (audio == null) {
+				audio = created;
+			} else {
+				created.destroy();
+			}
 		}
+		return audio;
 	}
 
 	/**
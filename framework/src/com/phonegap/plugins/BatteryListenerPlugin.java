@@ -137,7 +137,11 @@ public class BatteryListenerPlugin extends Plugin {
 		if (this.batteryCallbackId != null) {
 			PluginResult result = new PluginResult(PluginResult.Status.OK, info);
 			result.setKeepCallback(keepCallback);
-			this.success(result, this.batteryCallbackId);
+			if (keepCallback) {
+				this.update(result, this.batteryCallbackId);
+			} else {
+				this.success(result, this.batteryCallbackId);
+			}
 		}
 	}
 }
@@ -51,15 +51,16 @@ public class CameraLauncherPlugin extends Plugin {
 	private static final String GET_VIDEO = "Get Video";
 	private static final String GET_All = "Get All";
 
-	private int mQuality;				   // Compression quality hint (0-100: 0=low quality & high compression, 100=compress of max quality)
-	private int targetWidth;				// desired width of the image
-	private int targetHeight;			   // desired height of the image
-	private Uri imageUri;				   // Uri of captured image
-	private int encodingType;			   // Type of encoding to use
-	private int mediaType;				  // What type of media to retrieve
-
-	private String callbackId;
-	private int numPics;
+	// Set by execute() on a pool thread and read by onActivityResult() on the UI thread
+	private volatile int mQuality;				   // Compression quality hint (0-100: 0=low quality & high compression, 100=compress of max quality)
+	private volatile int targetWidth;				// desired width of the image
+	private volatile int targetHeight;			   // desired height of the image
+	private volatile Uri imageUri;				   // Uri of captured image
+	private volatile int encodingType;			   // Type of encoding to use
+	private volatile int mediaType;				  // What type of media to retrieve
+
+	private volatile String callbackId;
+	private volatile int numPics;
 
 	/**
 	 * Constructor.
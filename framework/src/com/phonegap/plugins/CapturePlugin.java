@@ -75,6 +75,18 @@ public class CapturePlugin extends Plugin {
 		return r;
 	}
 
+	/**
+	 * Get the time a result of the action is reused.
+	 *
+	 * @param action The action to execute
+	 * @return Milliseconds, 0 for no caching
+	 */
+	@Override
+	public long getCacheTtl(String action) {
+		// Pages ask for the format of the same captured files again and again, which decodes them
+		return action.equals("getFormatData") ? 30 * 1000 : 0;
+	}
+
 	/**
 	 * Provides the media data file data depending on it's mime type
 	 *
@@ -16,7 +16,6 @@ import com.phonegap.api.Plugin;
 import com.phonegap.api.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.util.List;
 
@@ -37,6 +36,13 @@ public class CompassListenerPlugin extends Plugin implements SensorEventListener
 	private long timeStamp;					 // time of most recent value
 	private long lastAccessTime;				// time the value was last retrieved
 
+	/**
+	 * Result of getHeading, reused for every sample.
+	 */
+	private final PluginResult compassHeading = new PluginResult(PluginResult.Status.OK,
+			new String[]{"magneticHeading", "trueHeading", "headingAccuracy", "timestamp"}, new double[4],
+			"navigator.compass._castDate");
+
 	private SensorManager sensorManager;// Sensor manager
 	private Sensor mSensor;					 // Compass sensor returned by sensor manager
 
@@ -103,7 +109,7 @@ public class CompassListenerPlugin extends Plugin implements SensorEventListener
 					}
 				}
 				//float f = this.getHeading();
-				return new PluginResult(status, getCompassHeading(), "navigator.compass._castDate");
+				return this.getCompassHeading();
 			} else if (action.equals("setTimeout")) {
 				this.setTimeout(args.getLong(0));
 			} else if (action.equals("getTimeout")) {
@@ -266,25 +272,15 @@ public class CompassListenerPlugin extends Plugin implements SensorEventListener
 	}
 
 	/**
-	 * Create the CompassHeading JSON object to be returned to JavaScript
+	 * Set the CompassHeading result to be returned to JavaScript
 	 *
 	 * @return a compass heading
 	 */
-	private JSONObject getCompassHeading() {
-		JSONObject obj = new JSONObject();
-
-		try {
-			obj.put("magneticHeading", this.getHeading());
-			obj.put("trueHeading", this.getHeading());
-			// Since the magnetic and true heading are always the same our and accuracy
-			// is defined as the difference between true and magnetic always return zero
-			obj.put("headingAccuracy", 0);
-			obj.put("timestamp", this.timeStamp);
-		} catch (JSONException e) {
-			// Should never happen
-		}
-
-		return obj;
+	private PluginResult getCompassHeading() {
+		float heading = this.getHeading();
+		// Since the magnetic and true heading are always the same our and accuracy
+		// is defined as the difference between true and magnetic always return zero
+		return this.compassHeading.setDoubles(heading, heading, 0, this.timeStamp);
 	}
 
 }
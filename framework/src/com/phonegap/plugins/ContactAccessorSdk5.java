@@ -791,7 +791,7 @@ class ContactAccessorSdk5 extends ContactAccessor {
 			photo.put("id", cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Photo._ID)));
 			photo.put("pref", false);
 			photo.put("type", "url");
-			Uri person = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, (new Long(contactId)));
+			Uri person = ContentUris.withAppendedId(ContactsContract.Contacts.CONTENT_URI, Long.parseLong(contactId));
 			Uri photoUri = Uri.withAppendedPath(person, ContactsContract.Contacts.Photo.CONTENT_DIRECTORY);
 			photo.put("value", photoUri.toString());
 		} catch (JSONException e) {
@@ -864,7 +864,7 @@ class ContactAccessorSdk5 extends ContactAccessor {
 	private String modifyContact(String id, JSONObject contact, Account account) {
 		// Get the RAW_CONTACT_ID which is needed to insert new values in an already existing contact.
 		// But not needed to update existing values.
-		int rawId = new Integer(getJsonString(contact, "rawId"));
+		int rawId = Integer.parseInt(getJsonString(contact, "rawId"));
 
 		// Create a list of attributes to add to the contact database
 		ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
@@ -88,6 +88,18 @@ public class DevicePlugin extends Plugin {
 		return action.equals("getDeviceInfo");
 	}
 
+	/**
+	 * Get the time a result of the action is reused.
+	 *
+	 * @param action The action to execute
+	 * @return Milliseconds, 0 for no caching
+	 */
+	@Override
+	public long getCacheTtl(String action) {
+		// The device info doesn't change while the app runs
+		return action.equals("getDeviceInfo") ? 60 * 60 * 1000 : 0;
+	}
+
 	//--------------------------------------------------------------------------
 	// LOCAL METHODS
 	//--------------------------------------------------------------------------
@@ -294,6 +294,12 @@ public class FileTransferPlugin extends Plugin {
 		totalBytes = 0;
 
 		while (bytesRead > 0) {
+			// Stop if the call was cancelled
+			if (Thread.currentThread().isInterrupted()) {
+				fileInputStream.close();
+				conn.disconnect();
+				throw new InterruptedIOException("Upload cancelled");
+			}
 			totalBytes += bytesRead;
 			result.setBytesSent(totalBytes);
 			dos.write(buffer, 0, bufferSize);
@@ -313,9 +319,9 @@ public class FileTransferPlugin extends Plugin {
 
 		//------------------ read the SERVER RESPONSE
 		StringBuilder responseString = new StringBuilder();
-		DataInputStream inStream;
+		BufferedReader inStream;
 		try {
-			inStream = new DataInputStream(conn.getInputStream());
+			inStream = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
 		} catch (FileNotFoundException e) {
 			throw new IOException("Received error from server");
 		}
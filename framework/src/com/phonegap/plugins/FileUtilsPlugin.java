@@ -15,6 +15,7 @@ import android.provider.MediaStore;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 import com.phonegap.api.Plugin;
+import com.phonegap.api.PluginAction;
 import com.phonegap.api.PluginResult;
 import com.phonegap.plugins.file.*;
 import org.apache.commons.codec.binary.Base64;
@@ -62,135 +63,176 @@ public class FileUtilsPlugin extends Plugin {
 	public FileUtilsPlugin() {
 	}
 
+	//--------------------------------------------------------------------------
+	// ACTIONS
+	//--------------------------------------------------------------------------
+
+	@PluginAction(sync = true, cacheTtl = 5 * 1000)
+	PluginResult testSaveLocationExists(JSONArray args, String callbackId) {
+		return new PluginResult(PluginResult.Status.OK, DirectoryManager.testSaveLocationExists());
+	}
+
+	@PluginAction(sync = true, cacheTtl = 5 * 1000)
+	PluginResult getFreeDiskSpace(JSONArray args, String callbackId) {
+		return new PluginResult(PluginResult.Status.OK, DirectoryManager.getFreeDiskSpace());
+	}
+
+	@PluginAction(sync = true)
+	PluginResult testFileExists(JSONArray args, String callbackId) throws JSONException {
+		return new PluginResult(PluginResult.Status.OK, DirectoryManager.testFileExists(args.getString(0)));
+	}
+
+	@PluginAction(sync = true)
+	PluginResult testDirectoryExists(JSONArray args, String callbackId) throws JSONException {
+		return new PluginResult(PluginResult.Status.OK, DirectoryManager.testFileExists(args.getString(0)));
+	}
+
+	@PluginAction(name = "readAsText")
+	PluginResult readAsTextAction(JSONArray args, String callbackId) throws JSONException, IOException {
+		return new PluginResult(PluginResult.Status.OK, this.readAsText(args.getString(0), args.getString(1)));
+	}
+
+	@PluginAction(name = "readAsDataURL")
+	PluginResult readAsDataURLAction(JSONArray args, String callbackId) throws JSONException, IOException {
+		return new PluginResult(PluginResult.Status.OK, this.readAsDataURL(args.getString(0)));
+	}
+
+	@PluginAction(name = "write")
+	PluginResult writeAction(JSONArray args, String callbackId) throws Exception {
+		long fileSize = this.write(args.getString(0), args.getString(1), args.getInt(2));
+		this.invalidateCache("getFreeDiskSpace");
+		return new PluginResult(PluginResult.Status.OK, fileSize);
+	}
+
+	@PluginAction(name = "truncate")
+	PluginResult truncateAction(JSONArray args, String callbackId) throws Exception {
+		long fileSize = this.truncateFile(args.getString(0), args.getLong(1));
+		this.invalidateCache("getFreeDiskSpace");
+		return new PluginResult(PluginResult.Status.OK, fileSize);
+	}
+
+	@PluginAction(name = "requestFileSystem")
+	PluginResult requestFileSystemAction(JSONArray args, String callbackId) throws Exception {
+		long size = args.optLong(1);
+		if (size != 0) {
+			if (size > (DirectoryManager.getFreeDiskSpace() * 1024)) {
+				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.QUOTA_EXCEEDED_ERR);
+				return new PluginResult(PluginResult.Status.ERROR, error);
+			}
+		}
+		JSONObject obj = requestFileSystem(args.getInt(0));
+		return new PluginResult(PluginResult.Status.OK, obj, "window.localFileSystem._castFS");
+	}
+
+	@PluginAction(name = "resolveLocalFileSystemURI")
+	PluginResult resolveLocalFileSystemURIAction(JSONArray args, String callbackId) throws Exception {
+		JSONObject obj = resolveLocalFileSystemURI(args.getString(0));
+		return new PluginResult(PluginResult.Status.OK, obj, "window.localFileSystem._castEntry");
+	}
+
+	@PluginAction(name = "getMetadata")
+	PluginResult getMetadataAction(JSONArray args, String callbackId) throws Exception {
+		JSONObject obj = getMetadata(args.getString(0));
+		return new PluginResult(PluginResult.Status.OK, obj, "window.localFileSystem._castDate");
+	}
+
+	@PluginAction(name = "getFileMetadata")
+	PluginResult getFileMetadataAction(JSONArray args, String callbackId) throws Exception {
+		JSONObject obj = getFileMetadata(args.getString(0));
+		return new PluginResult(PluginResult.Status.OK, obj, "window.localFileSystem._castDate");
+	}
+
+	@PluginAction(name = "getParent")
+	PluginResult getParentAction(JSONArray args, String callbackId) throws Exception {
+		JSONObject obj = getParent(args.getString(0));
+		return new PluginResult(PluginResult.Status.OK, obj, "window.localFileSystem._castEntry");
+	}
+
+	@PluginAction(name = "getDirectory")
+	PluginResult getDirectoryAction(JSONArray args, String callbackId) throws Exception {
+		JSONObject obj = getFile(args.getString(0), args.getString(1), args.optJSONObject(2), true);
+		return new PluginResult(PluginResult.Status.OK, obj, "window.localFileSystem._castEntry");
+	}
+
+	@PluginAction(name = "getFile")
+	PluginResult getFileAction(JSONArray args, String callbackId) throws Exception {
+		JSONObject obj = getFile(args.getString(0), args.getString(1), args.optJSONObject(2), false);
+		return new PluginResult(PluginResult.Status.OK, obj, "window.localFileSystem._castEntry");
+	}
+
+	@PluginAction(name = "remove")
+	PluginResult removeAction(JSONArray args, String callbackId) throws Exception {
+		if (remove(args.getString(0))) {
+			notifyDelete(args.getString(0));
+			this.invalidateCache("getFreeDiskSpace");
+			return new PluginResult(PluginResult.Status.OK);
+		} else {
+			JSONObject error = new JSONObject().put("code", FileUtilsPlugin.NO_MODIFICATION_ALLOWED_ERR);
+			return new PluginResult(PluginResult.Status.ERROR, error);
+		}
+	}
+
+	@PluginAction(name = "removeRecursively")
+	PluginResult removeRecursivelyAction(JSONArray args, String callbackId) throws Exception {
+		if (removeRecursively(args.getString(0))) {
+			this.invalidateCache("getFreeDiskSpace");
+			return new PluginResult(PluginResult.Status.OK);
+		} else {
+			JSONObject error = new JSONObject().put("code", FileUtilsPlugin.NO_MODIFICATION_ALLOWED_ERR);
+			return new PluginResult(PluginResult.Status.ERROR, error);
+		}
+	}
+
+	@PluginAction(name = "moveTo")
+	PluginResult moveToAction(JSONArray args, String callbackId) throws Exception {
+		JSONObject entry = transferTo(args.getString(0), args.getJSONObject(1), args.optString(2), true);
+		return new PluginResult(PluginResult.Status.OK, entry, "window.localFileSystem._castEntry");
+	}
+
+	@PluginAction(name = "copyTo")
+	PluginResult copyToAction(JSONArray args, String callbackId) throws Exception {
+		JSONObject entry = transferTo(args.getString(0), args.getJSONObject(1), args.optString(2), false);
+		this.invalidateCache("getFreeDiskSpace");
+		return new PluginResult(PluginResult.Status.OK, entry, "window.localFileSystem._castEntry");
+	}
+
+	@PluginAction(name = "readEntries")
+	PluginResult readEntriesAction(JSONArray args, String callbackId) throws Exception {
+		JSONArray entries = readEntries(args.getString(0));
+		return new PluginResult(PluginResult.Status.OK, entries, "window.localFileSystem._castEntries");
+	}
+
 	/**
-	 * Executes the request and returns PluginResult.
+	 * Map the exception of a failed action to a FileError code.
 	 *
-	 * @param action	 The action to execute.
-	 * @param args	   JSONArry of arguments for the plugin.
-	 * @param callbackId The callback id used when calling back into JavaScript.
+	 * @param action The action that failed
+	 * @param e      The exception it threw
 	 * @return A PluginResult object with a status and message.
 	 */
 	@Override
-	public PluginResult execute(String action, JSONArray args, String callbackId) {
-		PluginResult.Status status = PluginResult.Status.OK;
-		String result = "";
-		Log.d(TAG, "Action=" + action);
-
+	protected PluginResult onActionException(String action, Exception e) {
+		int code;
+		if (e instanceof FileNotFoundException) {
+			code = FileUtilsPlugin.NOT_FOUND_ERR;
+		} else if (e instanceof FileExistsException) {
+			code = FileUtilsPlugin.PATH_EXISTS_ERR;
+		} else if (e instanceof NoModificationAllowedException || e instanceof JSONException) {
+			code = FileUtilsPlugin.NO_MODIFICATION_ALLOWED_ERR;
+		} else if (e instanceof InvalidModificationException) {
+			code = FileUtilsPlugin.INVALID_MODIFICATION_ERR;
+		} else if (e instanceof MalformedURLException || e instanceof EncodingException) {
+			code = FileUtilsPlugin.ENCODING_ERR;
+		} else if (e instanceof IOException) {
+			code = FileUtilsPlugin.INVALID_MODIFICATION_ERR;
+		} else if (e instanceof TypeMismatchException) {
+			code = FileUtilsPlugin.TYPE_MISMATCH_ERR;
+		} else {
+			return super.onActionException(action, e);
+		}
 		try {
-			try {
-				if (action.equals("testSaveLocationExists")) {
-					boolean b = DirectoryManager.testSaveLocationExists();
-					return new PluginResult(status, b);
-				} else if (action.equals("getFreeDiskSpace")) {
-					long l = DirectoryManager.getFreeDiskSpace();
-					return new PluginResult(status, l);
-				} else if (action.equals("testFileExists")) {
-					boolean b = DirectoryManager.testFileExists(args.getString(0));
-					return new PluginResult(status, b);
-				} else if (action.equals("testDirectoryExists")) {
-					boolean b = DirectoryManager.testFileExists(args.getString(0));
-					return new PluginResult(status, b);
-				} else if (action.equals("readAsText")) {
-					String s = this.readAsText(args.getString(0), args.getString(1));
-					return new PluginResult(status, s);
-				} else if (action.equals("readAsDataURL")) {
-					String s = this.readAsDataURL(args.getString(0));
-					return new PluginResult(status, s);
-				} else if (action.equals("write")) {
-					long fileSize = this.write(args.getString(0), args.getString(1), args.getInt(2));
-					return new PluginResult(status, fileSize);
-				} else if (action.equals("truncate")) {
-					long fileSize = this.truncateFile(args.getString(0), args.getLong(1));
-					return new PluginResult(status, fileSize);
-				} else if (action.equals("requestFileSystem")) {
-					long size = args.optLong(1);
-					if (size != 0) {
-						if (size > (DirectoryManager.getFreeDiskSpace() * 1024)) {
-							JSONObject error = new JSONObject().put("code", FileUtilsPlugin.QUOTA_EXCEEDED_ERR);
-							return new PluginResult(PluginResult.Status.ERROR, error);
-						}
-					}
-					JSONObject obj = requestFileSystem(args.getInt(0));
-					return new PluginResult(status, obj, "window.localFileSystem._castFS");
-				} else if (action.equals("resolveLocalFileSystemURI")) {
-					JSONObject obj = resolveLocalFileSystemURI(args.getString(0));
-					return new PluginResult(status, obj, "window.localFileSystem._castEntry");
-				} else if (action.equals("getMetadata")) {
-					JSONObject obj = getMetadata(args.getString(0));
-					return new PluginResult(status, obj, "window.localFileSystem._castDate");
-				} else if (action.equals("getFileMetadata")) {
-					JSONObject obj = getFileMetadata(args.getString(0));
-					return new PluginResult(status, obj, "window.localFileSystem._castDate");
-				} else if (action.equals("getParent")) {
-					JSONObject obj = getParent(args.getString(0));
-					return new PluginResult(status, obj, "window.localFileSystem._castEntry");
-				} else if (action.equals("getDirectory")) {
-					JSONObject obj = getFile(args.getString(0), args.getString(1), args.optJSONObject(2), true);
-					return new PluginResult(status, obj, "window.localFileSystem._castEntry");
-				} else if (action.equals("getFile")) {
-					JSONObject obj = getFile(args.getString(0), args.getString(1), args.optJSONObject(2), false);
-					return new PluginResult(status, obj, "window.localFileSystem._castEntry");
-				} else if (action.equals("remove")) {
-					boolean success;
-
-					success = remove(args.getString(0));
-
-					if (success) {
-						notifyDelete(args.getString(0));
-						return new PluginResult(status);
-					} else {
-						JSONObject error = new JSONObject().put("code", FileUtilsPlugin.NO_MODIFICATION_ALLOWED_ERR);
-						return new PluginResult(PluginResult.Status.ERROR, error);
-					}
-				} else if (action.equals("removeRecursively")) {
-					boolean success = removeRecursively(args.getString(0));
-					if (success) {
-						return new PluginResult(status);
-					} else {
-						JSONObject error = new JSONObject().put("code", FileUtilsPlugin.NO_MODIFICATION_ALLOWED_ERR);
-						return new PluginResult(PluginResult.Status.ERROR, error);
-					}
-				} else if (action.equals("moveTo")) {
-					JSONObject entry = transferTo(args.getString(0), args.getJSONObject(1), args.optString(2), true);
-					return new PluginResult(status, entry, "window.localFileSystem._castEntry");
-				} else if (action.equals("copyTo")) {
-					JSONObject entry = transferTo(args.getString(0), args.getJSONObject(1), args.optString(2), false);
-					return new PluginResult(status, entry, "window.localFileSystem._castEntry");
-				} else if (action.equals("readEntries")) {
-					JSONArray entries = readEntries(args.getString(0));
-					return new PluginResult(status, entries, "window.localFileSystem._castEntries");
-				}
-				return new PluginResult(status, result);
-			} catch (FileNotFoundException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.NOT_FOUND_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			} catch (FileExistsException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.PATH_EXISTS_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			} catch (NoModificationAllowedException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.NO_MODIFICATION_ALLOWED_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			} catch (JSONException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.NO_MODIFICATION_ALLOWED_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			} catch (InvalidModificationException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.INVALID_MODIFICATION_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			} catch (MalformedURLException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.ENCODING_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			} catch (IOException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.INVALID_MODIFICATION_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			} catch (EncodingException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.ENCODING_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			} catch (TypeMismatchException e) {
-				JSONObject error = new JSONObject().put("code", FileUtilsPlugin.TYPE_MISMATCH_ERR);
-				return new PluginResult(PluginResult.Status.ERROR, error);
-			}
-		} catch (JSONException e) {
-			e.printStackTrace();
+			return new PluginResult(PluginResult.Status.ERROR, new JSONObject().put("code", code));
+		} catch (JSONException je) {
+			je.printStackTrace();
 			return new PluginResult(PluginResult.Status.JSON_EXCEPTION);
 		}
 	}
@@ -431,6 +473,10 @@ public class FileUtilsPlugin extends Plugin {
 		}
 
 		for (File file : srcDir.listFiles()) {
+			// Stop between files if the call was cancelled, transferTo stops within a file
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException("Copy cancelled");
+			}
 			if (file.isDirectory()) {
 				copyDirectory(file, destinationDir);
 			} else {
@@ -822,26 +868,6 @@ public class FileUtilsPlugin extends Plugin {
 		return getEntry(new File(path));
 	}
 
-	/**
-	 * Identifies if action to be executed returns a value and should be run synchronously.
-	 *
-	 * @param action The action to execute
-	 * @return T=returns value
-	 */
-	@Override
-	public boolean isSynch(String action) {
-		if (action.equals("testSaveLocationExists")) {
-			return true;
-		} else if (action.equals("getFreeDiskSpace")) {
-			return true;
-		} else if (action.equals("testFileExists")) {
-			return true;
-		} else if (action.equals("testDirectoryExists")) {
-			return true;
-		}
-		return false;
-	}
-
 	//--------------------------------------------------------------------------
 	// LOCAL METHODS
 	//--------------------------------------------------------------------------
@@ -72,7 +72,8 @@ class GeoListener {
 		if ("global".equals(id)) {
 			this.stop();
 		}
-		this.broker.sendJavascript("navigator._geo.success('" + id + "'," + params + ");");
+		// A watch only needs the latest position, a one time request stops after this one
+		this.broker.sendJavascript("navigator._geo.success('" + id + "'," + params + ");", "geo:" + id);
 	}
 
 	/**
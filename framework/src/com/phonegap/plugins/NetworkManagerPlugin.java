@@ -187,7 +187,7 @@ public class NetworkManagerPlugin extends Plugin {
 	private void sendUpdate(String type) {
 		PluginResult result = new PluginResult(PluginResult.Status.OK, type);
 		result.setKeepCallback(true);
-		this.success(result, this.connectionCallbackId);
+		this.update(result, this.connectionCallbackId);
 	}
 
 	/**
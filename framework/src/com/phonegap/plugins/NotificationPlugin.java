@@ -178,7 +178,7 @@ public class NotificationPlugin extends Plugin {
 						new AlertDialog.OnClickListener() {
 							public void onClick(DialogInterface dialog, int which) {
 								dialog.dismiss();
-								notificationPlugin.success(new PluginResult(PluginResult.Status.OK, 0), callbackId);
+								notificationPlugin.successInteractive(new PluginResult(PluginResult.Status.OK, 0), callbackId);
 							}
 						});
 				dlg.create();
@@ -217,7 +217,7 @@ public class NotificationPlugin extends Plugin {
 							new AlertDialog.OnClickListener() {
 								public void onClick(DialogInterface dialog, int which) {
 									dialog.dismiss();
-									notificationPlugin.success(new PluginResult(PluginResult.Status.OK, 1), callbackId);
+									notificationPlugin.successInteractive(new PluginResult(PluginResult.Status.OK, 1), callbackId);
 								}
 							});
 				}
@@ -228,7 +228,7 @@ public class NotificationPlugin extends Plugin {
 							new AlertDialog.OnClickListener() {
 								public void onClick(DialogInterface dialog, int which) {
 									dialog.dismiss();
-									notificationPlugin.success(new PluginResult(PluginResult.Status.OK, 2), callbackId);
+									notificationPlugin.successInteractive(new PluginResult(PluginResult.Status.OK, 2), callbackId);
 								}
 							});
 				}
@@ -239,7 +239,7 @@ public class NotificationPlugin extends Plugin {
 							new AlertDialog.OnClickListener() {
 								public void onClick(DialogInterface dialog, int which) {
 									dialog.dismiss();
-									notificationPlugin.success(new PluginResult(PluginResult.Status.OK, 3), callbackId);
+									notificationPlugin.successInteractive(new PluginResult(PluginResult.Status.OK, 3), callbackId);
 								}
 							}
 					);
@@ -13,6 +13,7 @@ import android.database.sqlite.SQLiteException;
 import android.util.Log;
 import com.phonegap.api.Plugin;
 import com.phonegap.api.PluginResult;
+import com.phonegap.api.Statement;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -193,11 +194,10 @@ public class StoragePlugin extends Plugin {
 	 */
 	private void processResults(Cursor cur, String tx_id) {
 
-		String result = "[]";
+		JSONArray fullresult = new JSONArray();
 		// If query result has rows
 
 		if (cur.moveToFirst()) {
-			JSONArray fullresult = new JSONArray();
 			String key = "";
 			String value = "";
 			int colCount = cur.getColumnCount();
@@ -218,13 +218,12 @@ public class StoragePlugin extends Plugin {
 				}
 
 			} while (cur.moveToNext());
-
-			result = fullresult.toString();
 		}
 
-		// Let JavaScript know that there are no more rows
-		this.sendJavascript("droiddb.completeQuery('" + tx_id + "', " + result
-				+ ");");
+		// Let JavaScript know that there are no more rows.
+		// The rows are serialized when the statement is sent, straight into the response.
+		this.sendJavascript(new Statement().append("droiddb.completeQuery('" + tx_id + "', ")
+				.appendOwnedJSON(fullresult).append(");"));
 
 	}
 
@@ -96,7 +96,7 @@ public class TempratureListenerPlugin extends Plugin implements SensorEventListe
 	public void onSensorChanged(SensorEvent event) {
 		// We want to know what temp this is.
 		float temp = event.values[0];
-		this.sendJavascript("gotTemp(" + temp + ");");
+		this.sendJavascript("gotTemp(" + temp + ");", "temperature");
 	}
 
 }
\ No newline at end of file